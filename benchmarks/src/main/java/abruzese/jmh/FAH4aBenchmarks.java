@@ -0,0 +1,37 @@
+package abruzese.jmh;
+
+import abruzese.hashtable.FAH4a;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FAH4a.hash over a fixed set of random Integer keys.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FAH4aBenchmarks {
+    private static final int KEYS = 4096;
+
+    private final Integer[] keys = new Integer[KEYS];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(172);
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = random.nextInt();
+        }
+    }
+
+    @Benchmark
+    public int hash() {
+        next = (next + 1) & (KEYS - 1);
+        return FAH4a.hash(keys[next]);
+    }
+}
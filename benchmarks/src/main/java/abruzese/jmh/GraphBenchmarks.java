@@ -0,0 +1,110 @@
+package abruzese.jmh;
+
+import abruzese.graph.EdgeCursor;
+import abruzese.graph.Graph;
+import abruzese.graph.edges.EdgeWeight;
+import abruzese.graph.edges.Road;
+import abruzese.graph.vertices.Intersection;
+import abruzese.hashtable.HashTable;
+import abruzese.util.MapBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ALGraph a map loads into: routing between a fixed set of intersection pairs, one pair per call in turn, plus
+ * neighbors and forEachOutEdge of a fixed set of intersections, and getEdges and an edgeCursor walk of the whole map.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GraphBenchmarks {
+    private static final int ROUTES = 64;
+
+    @Param({"ur", "grid-10K"})
+    public String map;
+
+    private Graph<Intersection, Road> graph;
+    private HashTable<Intersection, double[]> coordinates;
+    private final Intersection[] from = new Intersection[ROUTES];
+    private final Intersection[] to = new Intersection[ROUTES];
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        graph = MapBuilder.buildFromFile(MapData.file(map).toString());
+
+        // Sorted so the routes don't depend on the order the graph keeps its vertices in
+        List<Intersection> vertices = new ArrayList<>(graph.getVertices());
+        vertices.sort(Comparator.comparing(Intersection::intersectionID));
+        Random random = new Random(172);
+        for (int i = 0; i < ROUTES; i++) {
+            from[i] = vertices.get(random.nextInt(vertices.size()));
+            to[i] = vertices.get(random.nextInt(vertices.size()));
+        }
+
+        coordinates = new HashTable<>();
+        for (Intersection intersection : vertices) {
+            coordinates.put(intersection, new double[]{intersection.latitude(), intersection.longitude()});
+        }
+    }
+
+    private int nextRoute() {
+        next = (next + 1) & (ROUTES - 1);
+        return next;
+    }
+
+    @Benchmark
+    public EdgeWeight distance() {
+        int route = nextRoute();
+        return graph.distance(from[route], to[route]);
+    }
+
+    @Benchmark
+    public List<Intersection> path() {
+        int route = nextRoute();
+        return graph.path(from[route], to[route]);
+    }
+
+    @Benchmark
+    public List<Intersection> pathAStar() {
+        int route = nextRoute();
+        return graph.pathAStar(from[route], to[route], coordinates);
+    }
+
+    @Benchmark
+    public Collection<Intersection> neighbors() {
+        return graph.neighbors(from[nextRoute()]);
+    }
+
+    @Benchmark
+    public void forEachOutEdge(Blackhole blackhole) {
+        graph.forEachOutEdge(from[nextRoute()], (neighbor, road) -> blackhole.consume(road));
+    }
+
+    @Benchmark
+    public Set<HashTable.Entry<Intersection, Intersection>> getEdges() {
+        return graph.getEdges();
+    }
+
+    @Benchmark
+    public double edgeCursor() {
+        double total = 0;
+        EdgeCursor<Intersection, Road> edges = graph.edgeCursor();
+        while (edges.next()) {
+            total += edges.weight().getWeight();
+        }
+        return total;
+    }
+}
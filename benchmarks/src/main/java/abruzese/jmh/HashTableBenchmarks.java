@@ -0,0 +1,63 @@
+package abruzese.jmh;
+
+import abruzese.hashtable.HashTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HashTable put and get with String keys shaped like intersection IDs. put fills a fresh table with every key, so
+ * its time is per key including the resizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HashTableBenchmarks {
+    @Param({"1000", "1000000"})
+    public int size;
+
+    private String[] keys;
+    private String[] missing;
+    private HashTable<String, Integer> table;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(172);
+        keys = new String[size];
+        missing = new String[size];
+        table = new HashTable<>();
+        for (int i = 0; i < size; i++) {
+            keys[i] = "i" + random.nextInt(Integer.MAX_VALUE) + "_" + i;
+            missing[i] = "m" + random.nextInt(Integer.MAX_VALUE) + "_" + i;
+            table.put(keys[i], i);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public HashTable<String, Integer> put() {
+        // Only the first 1000 keys so small and large tables are timed per key the same way
+        HashTable<String, Integer> fresh = new HashTable<>();
+        for (int i = 0; i < 1000; i++) {
+            fresh.put(keys[i], i);
+        }
+        return fresh;
+    }
+
+    @Benchmark
+    public Integer get() {
+        next = next + 1 == size ? 0 : next + 1;
+        return table.get(keys[next]);
+    }
+
+    @Benchmark
+    public Integer getMissing() {
+        next = next + 1 == size ? 0 : next + 1;
+        return table.get(missing[next]);
+    }
+}
@@ -0,0 +1,36 @@
+package abruzese.jmh;
+
+import abruzese.graph.Graph;
+import abruzese.graph.edges.Road;
+import abruzese.graph.vertices.Intersection;
+import abruzese.util.MapBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MapBuilder.buildFromFile, from the text file to a finished ALGraph.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoadBenchmarks {
+    @Param({"ur", "grid-100K"})
+    public String map;
+
+    private String file;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = MapData.file(map).toString();
+    }
+
+    @Benchmark
+    public Graph<Intersection, Road> buildFromFile() throws IOException {
+        return MapBuilder.buildFromFile(file);
+    }
+}
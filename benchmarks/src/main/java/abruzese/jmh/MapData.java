@@ -0,0 +1,48 @@
+package abruzese.jmh;
+
+import abruzese.bench.MapGenerator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+/**
+ * Finds the map file a benchmark's map parameter names, so every run works on exactly the same data.
+ * <p>
+ * "ur" is the map bundled with the project, anything else is a generated map written as kind-size, like grid-100K
+ * or highways-1M, made by {@link MapGenerator} with its default seed. Generated maps are written to the temp
+ * directory once and reused by later runs.
+ */
+final class MapData {
+    private MapData() {
+    }
+
+    static Path file(String map) throws IOException {
+        Path dir = Path.of(System.getProperty("java.io.tmpdir"));
+        if (map.equals("ur")) {
+            Path file = dir.resolve("maptool-ur.txt");
+            try (InputStream in = MapData.class.getResourceAsStream("/abruzese/maps/ur.txt")) {
+                if (in == null) throw new IOException("ur.txt isn't on the classpath");
+                Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return file;
+        }
+
+        int dash = map.indexOf('-');
+        if (dash < 0) throw new IllegalArgumentException("Expected ur or kind-size, like grid-100K: " + map);
+        MapGenerator.Kind kind = MapGenerator.Kind.fromName(map.substring(0, dash));
+        int nodes = MapGenerator.parseCount(map.substring(dash + 1));
+        Path file = dir.resolve(String.format(Locale.ROOT, "%s-%d-%d.txt",
+                kind.name().toLowerCase(Locale.ROOT), nodes, MapGenerator.DEFAULT_SEED));
+        if (!Files.exists(file)) {
+            // Written under another name first so a run killed halfway doesn't leave half a map behind
+            Path partial = Files.createTempFile(dir, "maptool-", ".txt");
+            MapGenerator.generate(kind, nodes, MapGenerator.DEFAULT_SEED, partial);
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+}
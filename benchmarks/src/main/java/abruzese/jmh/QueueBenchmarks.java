@@ -0,0 +1,80 @@
+package abruzese.jmh;
+
+import abruzese.priorityQueue.IndexedPriorityQueue;
+import abruzese.priorityQueue.PriorityQueue;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IndexedPriorityQueue against PriorityQueue on the work Dijkstra gives them: every element added, a third of them
+ * moved up once, then everything polled. PriorityQueue can't move an element so it gets added again instead and the
+ * stale copy is skipped when it comes out, which is how a search uses it. Times are per element.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueueBenchmarks {
+    private static final int ELEMENTS = 10_000;
+
+    private final double[] start = new double[ELEMENTS];
+    private final double[] priorities = new double[ELEMENTS];
+    private final Integer[] elements = new Integer[ELEMENTS];
+    private final Comparator<Integer> byPriority = Comparator.comparingDouble(e -> priorities[e]);
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(172);
+        for (int i = 0; i < ELEMENTS; i++) {
+            start[i] = random.nextDouble() * 1_000_000;
+            elements[i] = i;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public int indexedPriorityQueue() {
+        System.arraycopy(start, 0, priorities, 0, ELEMENTS);
+        IndexedPriorityQueue<Integer> queue = new IndexedPriorityQueue<>(byPriority);
+        for (Integer element : elements) {
+            queue.add(element);
+        }
+        for (int i = 0; i < ELEMENTS; i += 3) {
+            priorities[i] /= 2;
+            queue.decreaseKey(elements[i]);
+        }
+        int sum = 0;
+        while (!queue.isEmpty()) {
+            sum += queue.poll();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public int priorityQueue() {
+        System.arraycopy(start, 0, priorities, 0, ELEMENTS);
+        // Entries are {element, priority when added} so stale copies can be told apart
+        PriorityQueue<double[]> queue = new PriorityQueue<>(Comparator.comparingDouble(entry -> entry[1]));
+        for (int i = 0; i < ELEMENTS; i++) {
+            queue.add(new double[]{i, priorities[i]});
+        }
+        for (int i = 0; i < ELEMENTS; i += 3) {
+            priorities[i] /= 2;
+            queue.add(new double[]{i, priorities[i]});
+        }
+        int sum = 0;
+        while (!queue.isEmpty()) {
+            double[] entry = queue.poll();
+            if (entry[1] == priorities[(int) entry[0]]) {
+                sum += (int) entry[0];
+            }
+        }
+        return sum;
+    }
+}
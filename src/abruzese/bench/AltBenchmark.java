@@ -0,0 +1,93 @@
+package abruzese.bench;
+
+import abruzese.graph.CSRGraph;
+import abruzese.graph.Heuristic;
+import abruzese.graph.LandmarkHeuristic;
+import abruzese.graph.SearchStats;
+import abruzese.graph.edges.Road;
+import abruzese.graph.vertices.Intersection;
+import abruzese.hashtable.HashTable;
+import abruzese.util.MapBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Runs the same random pairs of intersections through Dijkstra, A* with the haversine heuristic and A* with ALT
+ * landmarks on the frozen graph, and reports how many nodes each one settles on average (from {@link SearchStats})
+ * and how long a query takes. The landmarks' preprocessing is timed on its own first.
+ * <p>
+ * Usage: java abruzese.bench.AltBenchmark map.txt [queries] [landmarks]
+ */
+public class AltBenchmark {
+    private interface Search {
+        List<Intersection> path(Intersection from, Intersection to);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java abruzese.bench.AltBenchmark <map.txt> [queries] [landmarks]");
+            return;
+        }
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int landmarkCount = args.length > 2 ? Integer.parseInt(args[2]) : LandmarkHeuristic.DEFAULT_LANDMARKS;
+
+        CSRGraph<Intersection, Road> graph = MapBuilder.buildFromFile(args[0]).freeze();
+
+        long start = System.nanoTime();
+        LandmarkHeuristic<Intersection> landmarks = LandmarkHeuristic.build(graph, landmarkCount);
+        double landmarkMillis = (System.nanoTime() - start) / 1e6;
+
+        HashTable<Intersection, double[]> coordinates = new HashTable<>(graph.size() * 2);
+        for (Intersection intersection : graph) {
+            coordinates.put(intersection, new double[]{intersection.latitude(), intersection.longitude()});
+        }
+        Heuristic<Intersection> haversine = Heuristic.haversine(coordinates);
+
+        List<Intersection> vertices = new ArrayList<>(graph.size());
+        for (int v = 0; v < graph.vertexCount(); v++) {
+            vertices.add(graph.vertexAt(v));
+        }
+        Random random = new Random(172);
+        Intersection[] from = new Intersection[queries];
+        Intersection[] to = new Intersection[queries];
+        for (int i = 0; i < queries; i++) {
+            from[i] = vertices.get(random.nextInt(vertices.size()));
+            to[i] = vertices.get(random.nextInt(vertices.size()));
+        }
+
+        Map<String, Search> searches = new LinkedHashMap<>();
+        searches.put("dijkstra", graph::path);
+        searches.put("haversine A*", (s, t) -> graph.pathAStar(s, t, haversine));
+        searches.put("ALT A*", (s, t) -> graph.pathAStar(s, t, landmarks));
+
+        System.out.printf(Locale.ROOT, "%s: %d vertices, %d queries, %d landmarks built in %.0f ms%n", args[0],
+                vertices.size(), queries, landmarks.getLandmarks().length, landmarkMillis);
+        // Twice through so the first search isn't the only one paying for warmup
+        for (int pass = 0; pass < 2; pass++) {
+            for (Map.Entry<String, Search> search : searches.entrySet()) {
+                long settled = 0;
+                long relaxed = 0;
+                long pathLength = 0;
+                start = System.nanoTime();
+                for (int i = 0; i < queries; i++) {
+                    pathLength += search.getValue().path(from[i], to[i]).size();
+                    settled += SearchStats.last().nodesSettled();
+                    relaxed += SearchStats.last().edgesRelaxed();
+                }
+                double millis = (System.nanoTime() - start) / 1e6;
+
+                if (pass == 1) {
+                    System.out.printf(Locale.ROOT, "  %-13s %8.3f ms per query, %9.0f settled, %9.0f relaxed "
+                                    + "(%d path vertices)%n", search.getKey(), millis / queries,
+                            (double) settled / queries, (double) relaxed / queries, pathLength);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package abruzese.bench;
+
+import abruzese.graph.ALGraph;
+import abruzese.graph.CSRGraph;
+import abruzese.graph.ContractionHierarchy;
+import abruzese.graph.Graph;
+import abruzese.graph.LandmarkHeuristic;
+import abruzese.graph.edges.Road;
+import abruzese.graph.vertices.Intersection;
+import abruzese.util.MapBuilder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks that routing gives the same answers when lots of threads share one map. Every router runs the same random
+ * pairs one at a time first, then all of them at once, mixed together, on a fixed thread pool. Any path or
+ * distance from the parallel run that differs from the sequential one, or any sequential distance that differs
+ * from plain Dijkstra on the ALGraph, is printed and the program exits with status 1.
+ * <p>
+ * Usage: java abruzese.bench.ConcurrencyStress [map.txt | nodes] [--queries 2000] [--threads N] [--dir path]
+ * <p>
+ * Given a number of nodes instead of a map it uses a grid map of that size, written to the system temp directory
+ * (or --dir) if an earlier run hasn't already. The default is a 10K intersection grid and twice as many threads as
+ * there are processors.
+ */
+public class ConcurrencyStress {
+    private static final int MAX_PRINTED = 10;
+
+    private interface Router {
+        List<Intersection> path(Intersection from, Intersection to);
+    }
+
+    private record Result(List<Intersection> path, double distance) {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        String map = null;
+        int nodes = 10_000;
+        int queries = 2_000;
+        int threads = Runtime.getRuntime().availableProcessors() * 2;
+        Path dir = Path.of(System.getProperty("java.io.tmpdir"));
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--queries" -> queries = Integer.parseInt(args[++i]);
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--dir" -> dir = Path.of(args[++i]);
+                default -> {
+                    if (args[i].matches("\\d+[KkMm]?")) {
+                        nodes = MapGenerator.parseCount(args[i]);
+                    } else {
+                        map = args[i];
+                    }
+                }
+            }
+        }
+        if (map == null) map = MapGenerator.generateIfMissing(MapGenerator.Kind.GRID, nodes, dir).toString();
+
+        Graph<Intersection, Road> loaded = MapBuilder.buildFromFile(map);
+        if (!(loaded instanceof ALGraph<Intersection, Road> graph)) {
+            throw new IllegalStateException("Expected the map to load as an ALGraph");
+        }
+        CSRGraph<Intersection, Road> frozen = graph.freeze();
+        ContractionHierarchy<Intersection, Road> hierarchy = ContractionHierarchy.build(frozen);
+        LandmarkHeuristic<Intersection> landmarks = LandmarkHeuristic.build(frozen);
+
+        List<String> names = List.of("ALGraph", "CSRGraph", "ch", "alt");
+        List<Router> routers = List.of(graph::path, frozen::path, hierarchy::path,
+                (from, to) -> frozen.pathAStar(from, to, landmarks));
+
+        // Sorted first so the same pairs are picked however the graph orders its vertices
+        List<Intersection> vertices = new ArrayList<>(graph.getVertices());
+        vertices.sort(Comparator.comparing(Intersection::intersectionID));
+        Random random = new Random(172);
+        Intersection[] from = new Intersection[queries];
+        Intersection[] to = new Intersection[queries];
+        for (int i = 0; i < queries; i++) {
+            from[i] = vertices.get(random.nextInt(vertices.size()));
+            to[i] = vertices.get(random.nextInt(vertices.size()));
+        }
+        System.out.printf(Locale.ROOT, "%s: %d intersections, %d queries per router, %d threads%n", map,
+                vertices.size(), queries, threads);
+
+        Result[][] sequential = new Result[routers.size()][queries];
+        for (int r = 0; r < routers.size(); r++) {
+            for (int i = 0; i < queries; i++) {
+                sequential[r][i] = route(graph, routers.get(r), from[i], to[i]);
+            }
+        }
+
+        // Every router's queries shuffled together, so different searches share the graph at the same time
+        List<int[]> tasks = new ArrayList<>();
+        for (int r = 0; r < routers.size(); r++) {
+            for (int i = 0; i < queries; i++) {
+                tasks.add(new int[]{r, i});
+            }
+        }
+        Collections.shuffle(tasks, random);
+
+        Result[][] parallel = new Result[routers.size()][queries];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>(tasks.size());
+            for (int[] task : tasks) {
+                int r = task[0];
+                int i = task[1];
+                futures.add(pool.submit(() -> {
+                    parallel[r][i] = route(graph, routers.get(r), from[i], to[i]);
+                }));
+            }
+            // get() rethrows anything a query threw, which counts as a failure too
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        double millis = (System.nanoTime() - start) / 1e6;
+
+        int mismatches = 0;
+        for (int r = 0; r < routers.size(); r++) {
+            int routerMismatches = 0;
+            for (int i = 0; i < queries; i++) {
+                String problem = compare(sequential[0][i], sequential[r][i], parallel[r][i]);
+                if (problem == null) continue;
+
+                if (mismatches + routerMismatches < MAX_PRINTED) {
+                    System.out.printf(Locale.ROOT, "  MISMATCH %s %s -> %s: %s%n", names.get(r),
+                            from[i].intersectionID(), to[i].intersectionID(), problem);
+                }
+                routerMismatches++;
+            }
+            System.out.printf(Locale.ROOT, "  %-9s %d mismatches%n", names.get(r), routerMismatches);
+            mismatches += routerMismatches;
+        }
+        System.out.printf(Locale.ROOT, "  parallel run took %.0f ms for %d queries%n", millis, tasks.size());
+
+        if (mismatches > 0) {
+            System.out.printf(Locale.ROOT, "FAILED: %d of %d parallel queries differ%n", mismatches, tasks.size());
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    private static Result route(Graph<Intersection, Road> graph, Router router, Intersection from, Intersection to) {
+        List<Intersection> path = router.path(from, to);
+        double distance = path.isEmpty() ? Double.POSITIVE_INFINITY : 0;
+        for (int i = 0; i + 1 < path.size(); i++) {
+            distance += graph.get(path.get(i), path.get(i + 1)).getWeight();
+        }
+        return new Result(path, distance);
+    }
+
+    /**
+     * @return what's wrong with a router's parallel result, or null if it matches its sequential result and that
+     *         is as short as Dijkstra's
+     */
+    private static String compare(Result dijkstra, Result sequential, Result parallel) {
+        if (!parallel.path().equals(sequential.path())) {
+            return "parallel path has " + parallel.path().size() + " intersections, sequential "
+                    + sequential.path().size();
+        }
+        if (parallel.distance() != sequential.distance()) {
+            return "parallel distance " + parallel.distance() + ", sequential " + sequential.distance();
+        }
+        // Different routers may pick different paths of the same length, so only the length is checked here
+        if (Math.abs(sequential.distance() - dijkstra.distance()) > 1e-6 * Math.max(1, dijkstra.distance())) {
+            return "distance " + sequential.distance() + ", Dijkstra " + dijkstra.distance();
+        }
+        return null;
+    }
+}
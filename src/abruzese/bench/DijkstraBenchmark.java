@@ -0,0 +1,58 @@
+package abruzese.bench;
+
+import abruzese.graph.ALGraph;
+import abruzese.graph.Graph;
+import abruzese.graph.edges.Road;
+import abruzese.graph.vertices.Intersection;
+import abruzese.util.MapBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Times Dijkstra's algorithm on the (unfrozen) ALGraph a map loads into, between the same random pairs of
+ * intersections every run.
+ * <p>
+ * Usage: java abruzese.bench.DijkstraBenchmark map.txt [queries]
+ */
+public class DijkstraBenchmark {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java abruzese.bench.DijkstraBenchmark <map.txt> [queries]");
+            return;
+        }
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        Graph<Intersection, Road> graph = MapBuilder.buildFromFile(args[0]);
+        if (!(graph instanceof ALGraph)) {
+            throw new IllegalStateException("Expected the map to load as an ALGraph");
+        }
+        List<Intersection> vertices = new ArrayList<>(graph.getVertices());
+
+        Random random = new Random(172);
+        Intersection[] from = new Intersection[queries];
+        Intersection[] to = new Intersection[queries];
+        for (int i = 0; i < queries; i++) {
+            from[i] = vertices.get(random.nextInt(vertices.size()));
+            to[i] = vertices.get(random.nextInt(vertices.size()));
+        }
+
+        // Warm up on the first tenth of the queries, then time all of them
+        for (int i = 0; i < Math.max(1, queries / 10); i++) {
+            graph.path(from[i], to[i]);
+        }
+
+        long pathLength = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            pathLength += graph.path(from[i], to[i]).size();
+        }
+        double millis = (System.nanoTime() - start) / 1e6;
+
+        System.out.printf(Locale.ROOT, "%s: %d vertices, %d queries, %.2f ms per query (%d path vertices)%n",
+                args[0], vertices.size(), queries, millis / queries, pathLength);
+    }
+}
@@ -0,0 +1,46 @@
+package abruzese.bench;
+
+import abruzese.hashtable.FAH4a;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Times FAH4a against the original ByteBuffer version over a lot of random hash codes. {@link FAH4aCheck} is what
+ * checks they give the same hashes.
+ * <p>
+ * Usage: java abruzese.bench.FAH4aBenchmark [hashCodes] [rounds]
+ */
+public class FAH4aBenchmark {
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        Random random = new Random(172);
+        Integer[] keys = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = random.nextInt();
+        }
+
+        long flat = 0;
+        long original = 0;
+        long check = 0;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            for (Integer key : keys) check += FAH4a.hash(key);
+            long middle = System.nanoTime();
+            for (Integer key : keys) check += FAH4aOriginal.hash(key);
+            long end = System.nanoTime();
+
+            // First half of the rounds are warmup
+            if (round >= rounds / 2) {
+                flat += middle - start;
+                original += end - middle;
+            }
+        }
+
+        double ops = (double) n * (rounds - rounds / 2);
+        System.out.printf(Locale.ROOT, "flat table  %6.2f ns/hash%n", flat / ops);
+        System.out.printf(Locale.ROOT, "original    %6.2f ns/hash   (checksum %d)%n", original / ops, check);
+    }
+}
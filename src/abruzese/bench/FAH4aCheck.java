@@ -0,0 +1,69 @@
+package abruzese.bench;
+
+import abruzese.hashtable.FAH4a;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Checks that FAH4a gives the same hash as the original ByteBuffer version for millions of random hash codes and
+ * the edges of the int range, or with --all for every int. It prints the first few that differ and exits with
+ * status 1 if any do.
+ * <p>
+ * Usage: java abruzese.bench.FAH4aCheck [hashCodes] [--all]
+ */
+public class FAH4aCheck {
+    private static final int MAX_PRINTED = 10;
+    private static final int[] EDGES = {0, 1, -1, Integer.MIN_VALUE, Integer.MAX_VALUE, 0xffff, 0x10000, 0xff00ff};
+
+    private static int mismatches;
+
+    public static void main(String[] args) {
+        int n = 20_000_000;
+        boolean all = false;
+        for (String arg : args) {
+            if (arg.equals("--all")) {
+                all = true;
+            } else {
+                n = Integer.parseInt(arg);
+            }
+        }
+
+        long checked = 0;
+        for (int hashCode : EDGES) {
+            check(hashCode);
+            checked++;
+        }
+        if (all) {
+            int hashCode = Integer.MIN_VALUE;
+            do {
+                check(hashCode);
+                checked++;
+            } while (hashCode++ != Integer.MAX_VALUE);
+        } else {
+            Random random = new Random(172);
+            for (int i = 0; i < n; i++) {
+                check(random.nextInt());
+                checked++;
+            }
+        }
+
+        if (mismatches > 0) {
+            System.out.printf(Locale.ROOT, "FAILED: %d of %d hash codes differ from the original%n", mismatches,
+                    checked);
+            System.exit(1);
+        }
+        System.out.printf(Locale.ROOT, "OK: %d hash codes match the original%n", checked);
+    }
+
+    private static void check(int hashCode) {
+        int flat = FAH4a.hash(hashCode);
+        int original = FAH4aOriginal.hash(hashCode);
+        if (flat == original) return;
+
+        if (mismatches < MAX_PRINTED) {
+            System.out.printf(Locale.ROOT, "  MISMATCH hashCode %d: %d, original %d%n", hashCode, flat, original);
+        }
+        mismatches++;
+    }
+}
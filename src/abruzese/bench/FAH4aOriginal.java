@@ -0,0 +1,43 @@
+package abruzese.bench;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * FAH4a as it was before the flat table, kept to check the new one against and to time it against.
+ */
+final class FAH4aOriginal {
+    private static final byte[][][] T = buildTable();
+
+    private FAH4aOriginal() {
+    }
+
+    private static byte[][][] buildTable() {
+        Random gen = new Random(690);
+        byte[][][] table = new byte[1 << 8][1 << 8][4];
+        for (byte[][] row : table) {
+            for (byte[] num : row) {
+                gen.nextBytes(num);
+            }
+        }
+        return table;
+    }
+
+    static int hash(Object key) {
+        byte[] h = new byte[4];
+        byte[] chunks = ByteBuffer.allocate(4).putInt(key.hashCode()).array();
+
+        for (int i = 0; i < chunks.length; i += 2) {
+            byte x = chunks[i];
+            byte y = chunks[i + 1];
+            x ^= h[0];
+            y ^= h[1];
+
+            byte[] tval = T[y & 0xff][x & 0xff];
+            for (int c = 0; c < 4; c++)
+                h[c] ^= tval[c];
+        }
+
+        return ByteBuffer.wrap(h).getInt();
+    }
+}
@@ -0,0 +1,153 @@
+package abruzese.bench;
+
+import abruzese.graph.ALGraph;
+import abruzese.graph.Graph;
+import abruzese.graph.edges.Road;
+import abruzese.graph.vertices.Intersection;
+import abruzese.hashtable.HashTable;
+import abruzese.priorityQueue.DialQueue;
+import abruzese.priorityQueue.IndexedPriorityQueue;
+import abruzese.priorityQueue.IntIndexedDaryHeap;
+import abruzese.priorityQueue.IntIndexedMinHeap;
+import abruzese.priorityQueue.IntPriorityQueue;
+import abruzese.util.MapBuilder;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Runs ALGraph.distance() between the same random pairs of intersections with each kind of frontier queue. The
+ * Dial bucket queue is only tried when every road length is a whole number.
+ * <p>
+ * Usage: java abruzese.bench.FrontierBenchmark map.txt [queries]
+ */
+public class FrontierBenchmark {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java abruzese.bench.FrontierBenchmark <map.txt> [queries]");
+            return;
+        }
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        Graph<Intersection, Road> graph = MapBuilder.buildFromFile(args[0]);
+        if (!(graph instanceof ALGraph<Intersection, Road> alGraph)) {
+            throw new IllegalStateException("Expected the map to load as an ALGraph");
+        }
+        List<Intersection> vertices = new ArrayList<>(graph.getVertices());
+
+        Random random = new Random(172);
+        Intersection[] from = new Intersection[queries];
+        Intersection[] to = new Intersection[queries];
+        for (int i = 0; i < queries; i++) {
+            from[i] = vertices.get(random.nextInt(vertices.size()));
+            to[i] = vertices.get(random.nextInt(vertices.size()));
+        }
+
+        Map<String, Supplier<IntPriorityQueue>> frontiers = new LinkedHashMap<>();
+        frontiers.put("IndexedPriorityQueue", HashedQueue::new);
+        frontiers.put("binary heap", () -> new IntIndexedMinHeap(0));
+        frontiers.put("4-ary heap", () -> new IntIndexedDaryHeap(4, 0));
+        frontiers.put("8-ary heap", () -> new IntIndexedDaryHeap(8, 0));
+        int maxWeight = maxIntegerWeight(graph);
+        if (maxWeight >= 0) {
+            frontiers.put("Dial buckets", () -> new DialQueue(maxWeight, 0));
+        }
+
+        System.out.printf(Locale.ROOT, "%s: %d vertices, %d queries%n", args[0], vertices.size(), queries);
+        // Twice through so the first frontier isn't the only one paying for warmup
+        for (int pass = 0; pass < 2; pass++) {
+            for (Map.Entry<String, Supplier<IntPriorityQueue>> frontier : frontiers.entrySet()) {
+                double total = 0;
+                long start = System.nanoTime();
+                for (int i = 0; i < queries; i++) {
+                    total += alGraph.distance(from[i], to[i], frontier.getValue().get()).getWeight();
+                }
+                double millis = (System.nanoTime() - start) / 1e6;
+                System.out.printf(Locale.ROOT, "  %-22s %8.3f ms per query   (total distance %.0f)%n",
+                        frontier.getKey(), millis / queries, total);
+            }
+        }
+    }
+
+    /**
+     * @return the largest edge weight, or -1 if they aren't all whole numbers (then Dial's algorithm can't be used)
+     */
+    private static int maxIntegerWeight(Graph<Intersection, Road> graph) {
+        int max = 0;
+        for (Intersection from : graph) {
+            for (Intersection to : graph.getConnected(from)) {
+                double weight = graph.get(from, to).getWeight();
+                if (weight < 0 || weight != Math.rint(weight)) return -1;
+                max = Math.max(max, (int) weight);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * The frontier the way ALGraph used to do it: positions in a HashTable and a comparator that looks both
+     * priorities up in another one.
+     */
+    private static class HashedQueue implements IntPriorityQueue {
+        private final HashTable<Integer, Double> priorities = new HashTable<>();
+        private final IndexedPriorityQueue<Integer> queue =
+                new IndexedPriorityQueue<>(Comparator.comparing(priorities::get));
+        private int size;
+
+        @Override
+        public void ensureCapacity(int capacity) {
+        }
+
+        @Override
+        public void add(int id, double priority) {
+            priorities.put(id, priority);
+            queue.add(id);
+            size++;
+        }
+
+        @Override
+        public void decreaseKey(int id, double priority) {
+            priorities.put(id, priority);
+            queue.decreaseKey(id);
+        }
+
+        @Override
+        public int poll() {
+            if (size == 0) throw new NoSuchElementException("Priority queue is empty");
+            size--;
+            return queue.poll();
+        }
+
+        @Override
+        public int peek() {
+            if (size == 0) throw new NoSuchElementException("Priority queue is empty");
+            return queue.peek();
+        }
+
+        @Override
+        public double peekPriority() {
+            return priorities.get(peek());
+        }
+
+        @Override
+        public boolean contains(int id) {
+            return queue.contains(id);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            while (size > 0) poll();
+        }
+    }
+}
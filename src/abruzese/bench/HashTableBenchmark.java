@@ -0,0 +1,96 @@
+package abruzese.bench;
+
+import abruzese.hashtable.ChainedHashTable;
+import abruzese.hashtable.HashTable;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Times put, get (hits and misses) and remove on the open addressing HashTable against the old ChainedHashTable.
+ * <p>
+ * Usage: java abruzese.bench.HashTableBenchmark [keys] [rounds]
+ * <p>
+ * Each round fills a fresh table with the same random String keys (like intersection IDs), looks every key up
+ * along with as many keys that aren't there, then removes them all. The first half of the rounds are warmup and
+ * the rest are averaged.
+ */
+public class HashTableBenchmark {
+    private interface Table {
+        void put(String key, Integer value);
+
+        Integer get(String key);
+
+        Integer remove(String key);
+    }
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        Random random = new Random(172);
+        String[] keys = new String[n];
+        String[] missing = new String[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = "i" + random.nextInt(Integer.MAX_VALUE) + "_" + i;
+            missing[i] = "m" + random.nextInt(Integer.MAX_VALUE) + "_" + i;
+        }
+        Integer[] values = new Integer[n];
+        for (int i = 0; i < n; i++) values[i] = i;
+
+        System.out.printf(Locale.ROOT, "%d keys, ns per operation%n", n);
+        System.out.printf(Locale.ROOT, "%-18s %8s %8s %8s %8s%n", "table", "put", "get", "miss", "remove");
+        for (int pass = 0; pass < 2; pass++) {
+            run("ChainedHashTable", rounds, keys, missing, values, () -> {
+                ChainedHashTable<String, Integer> table = new ChainedHashTable<>();
+                return new Table() {
+                    public void put(String key, Integer value) { table.put(key, value); }
+                    public Integer get(String key) { return table.get(key); }
+                    public Integer remove(String key) { return table.remove(key); }
+                };
+            });
+            run("HashTable", rounds, keys, missing, values, () -> {
+                HashTable<String, Integer> table = new HashTable<>();
+                return new Table() {
+                    public void put(String key, Integer value) { table.put(key, value); }
+                    public Integer get(String key) { return table.get(key); }
+                    public Integer remove(String key) { return table.remove(key); }
+                };
+            });
+        }
+    }
+
+    private static void run(String name, int rounds, String[] keys, String[] missing, Integer[] values,
+                            java.util.function.Supplier<Table> factory) {
+        int n = keys.length;
+        long[] totals = new long[4];
+        long check = 0;
+        int measured = 0;
+
+        for (int round = 0; round < rounds; round++) {
+            Table table = factory.get();
+
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++) table.put(keys[i], values[i]);
+            long afterPut = System.nanoTime();
+            for (int i = 0; i < n; i++) check += table.get(keys[i]);
+            long afterGet = System.nanoTime();
+            for (int i = 0; i < n; i++) if (table.get(missing[i]) != null) check++;
+            long afterMiss = System.nanoTime();
+            for (int i = 0; i < n; i++) check += table.remove(keys[i]);
+            long afterRemove = System.nanoTime();
+
+            if (round >= rounds / 2) {
+                totals[0] += afterPut - start;
+                totals[1] += afterGet - afterPut;
+                totals[2] += afterMiss - afterGet;
+                totals[3] += afterRemove - afterMiss;
+                measured++;
+            }
+        }
+
+        double ops = (double) n * measured;
+        System.out.printf(Locale.ROOT, "%-18s %8.1f %8.1f %8.1f %8.1f   (checksum %d)%n", name,
+                totals[0] / ops, totals[1] / ops, totals[2] / ops, totals[3] / ops, check);
+    }
+}
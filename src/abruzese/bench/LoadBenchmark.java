@@ -0,0 +1,66 @@
+package abruzese.bench;
+
+import abruzese.graph.Graph;
+import abruzese.graph.edges.Road;
+import abruzese.graph.vertices.Intersection;
+import abruzese.util.MapBuilder;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Locale;
+
+/**
+ * Loads a map with MapBuilder.buildFromFile and reports how long it took, the most heap in use at any point while
+ * loading, and how much of that the finished graph keeps. The peak is read from the heap pools' peak usage, which
+ * counts garbage that hasn't been collected yet, so run it with the same -Xmx when comparing loaders (or find the
+ * smallest -Xmx it still loads under for the live peak).
+ * <p>
+ * Usage: java abruzese.bench.LoadBenchmark map.txt
+ */
+public class LoadBenchmark {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java abruzese.bench.LoadBenchmark <map.txt>");
+            return;
+        }
+
+        System.gc();
+        long before = usedHeap();
+        resetPeakHeap();
+
+        long start = System.nanoTime();
+        Graph<Intersection, Road> graph = MapBuilder.buildFromFile(args[0]);
+        double millis = (System.nanoTime() - start) / 1e6;
+        long peak = peakHeap();
+
+        System.gc();
+        long retained = usedHeap() - before;
+
+        System.out.printf(Locale.ROOT, "%s: %d vertices, loaded in %.0f ms, peak heap %d MB, graph keeps %d MB%n",
+                args[0], graph.size(), millis, (peak - before) >> 20, retained >> 20);
+    }
+
+    static long usedHeap() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) used += pool.getUsage().getUsed();
+        }
+        return used;
+    }
+
+    static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package abruzese.bench;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Writes synthetic maps in the same tab separated i/r format as ur.txt, so loading, routing and drawing can be
+ * timed on maps much bigger than the one in the repo. The same kind, size and seed always write the same file.
+ * <ul>
+ *     <li>grid: one city of 100m blocks with every corner nudged a little and about 15% of the north-south
+ *     streets missing (never the westmost one, so every corner can still be reached)</li>
+ *     <li>geometric: intersections scattered at random, two to every 120m square, with a road between any two
+ *     closer than 108m, which gives about 4 roads per intersection and leaves a few small islands</li>
+ *     <li>highways: grid cities spread out at random and joined by highways, each city to the nearest city placed
+ *     before it (so everything is connected) and to its nearest city overall. About a tenth of the intersections
+ *     are along the highways, at most one every 500m</li>
+ * </ul>
+ * Positions come from hashing the seed with the intersection's number rather than from a running random number
+ * generator, so they're worked out again when writing the roads instead of being kept, and a 50M intersection map
+ * takes no more memory to write than a small one.
+ * <p>
+ * Usage: java abruzese.bench.MapGenerator grid|geometric|highways nodes out.txt [seed]
+ * <p>
+ * nodes can end in K or M, as in 50M.
+ */
+public class MapGenerator {
+    public static final long DEFAULT_SEED = 172;
+
+    // Everything is laid out in metres east and north of here, then turned into degrees when written
+    private static final double ORIGIN_LATITUDE = 43.0;
+    private static final double ORIGIN_LONGITUDE = -77.8;
+    private static final double METRES_PER_DEGREE_LATITUDE = 6371000.0 * Math.PI / 180;
+    private static final double METRES_PER_DEGREE_LONGITUDE =
+            METRES_PER_DEGREE_LATITUDE * Math.cos(Math.toRadians(ORIGIN_LATITUDE));
+
+    private static final double BLOCK = 100;
+    private static final double MISSING_STREETS = 0.15;
+    private static final double CELL = 120;
+    private static final double RADIUS = 108;
+    private static final double CITY_SPACING = 40_000;
+    private static final double HIGHWAY_SPACING = 500;
+
+    public enum Kind {
+        GRID, GEOMETRIC, HIGHWAYS;
+
+        /**
+         * @throws IllegalArgumentException if name isn't grid, geometric or highways
+         */
+        public static Kind fromName(String name) {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println(
+                    "Usage: java abruzese.bench.MapGenerator grid|geometric|highways <nodes> <out.txt> [seed]");
+            return;
+        }
+        Kind kind = Kind.fromName(args[0]);
+        int nodes = parseCount(args[1]);
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_SEED;
+
+        long start = System.nanoTime();
+        long roads = generate(kind, nodes, seed, Path.of(args[2]));
+        System.out.printf(Locale.ROOT, "%s: %d intersections, %d roads in %.1f s%n",
+                args[2], nodes, roads, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Parses a count like 1000, 10K or 50M.
+     */
+    public static int parseCount(String count) {
+        String upper = count.toUpperCase(Locale.ROOT);
+        long multiplier = 1;
+        if (upper.endsWith("K")) multiplier = 1_000;
+        else if (upper.endsWith("M")) multiplier = 1_000_000;
+        if (multiplier > 1) upper = upper.substring(0, upper.length() - 1);
+        return Math.toIntExact(Long.parseLong(upper) * multiplier);
+    }
+
+    /**
+     * Writes the map for kind and nodes with the default seed into dir, unless an earlier run already did.
+     *
+     * @return the map's file
+     */
+    public static Path generateIfMissing(Kind kind, int nodes, Path dir) throws IOException {
+        Path file = dir.resolve(String.format(Locale.ROOT, "%s-%d-%d.txt",
+                kind.name().toLowerCase(Locale.ROOT), nodes, DEFAULT_SEED));
+        if (!Files.exists(file)) {
+            Files.createDirectories(dir);
+            long start = System.nanoTime();
+            generate(kind, nodes, DEFAULT_SEED, file);
+            System.out.printf(Locale.ROOT, "generated %s in %.1f s%n", file, (System.nanoTime() - start) / 1e9);
+        }
+        return file;
+    }
+
+    /**
+     * Writes a map with exactly nodes intersections to file, all the intersections first and then the roads.
+     *
+     * @return the number of roads written
+     */
+    public static long generate(Kind kind, int nodes, long seed, Path file) throws IOException {
+        if (nodes < 1) throw new IllegalArgumentException("A map needs at least one intersection");
+        try (MapWriter out = new MapWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            switch (kind) {
+                case GRID -> {
+                    GridCity city = new GridCity(0, nodes, 0, 0, seed);
+                    city.writeIntersections(out);
+                    city.writeRoads(out);
+                }
+                case GEOMETRIC -> writeGeometric(out, nodes, seed);
+                case HIGHWAYS -> writeHighways(out, nodes, seed);
+            }
+            return out.roads;
+        }
+    }
+
+    /**
+     * A city of nodes intersections in rows of columns() blocks, the last row cut short, numbered from firstId
+     * starting at its southwest corner (x0, y0).
+     */
+    private record GridCity(int firstId, int nodes, double x0, double y0, long seed) {
+        int columns() {
+            return (int) Math.ceil(Math.sqrt(nodes));
+        }
+
+        double x(int k) {
+            return x0 + (k % columns()) * BLOCK + (unit(seed, 2L * k) - 0.5) * BLOCK * 0.4;
+        }
+
+        double y(int k) {
+            return y0 + (k / columns()) * BLOCK + (unit(seed, 2L * k + 1) - 0.5) * BLOCK * 0.4;
+        }
+
+        /**
+         * @return the intersection of this city closest to (x, y), give or take the nudges
+         */
+        int nodeNear(double x, double y) {
+            int columns = columns();
+            int rows = (nodes + columns - 1) / columns;
+            int column = (int) Math.max(0, Math.min(columns - 1, Math.round((x - x0) / BLOCK)));
+            int row = (int) Math.max(0, Math.min(rows - 1, Math.round((y - y0) / BLOCK)));
+            if (row * columns + column >= nodes) row--;
+            return row * columns + column;
+        }
+
+        void writeIntersections(MapWriter out) throws IOException {
+            for (int k = 0; k < nodes; k++) {
+                out.intersection(firstId + k, x(k), y(k));
+            }
+        }
+
+        void writeRoads(MapWriter out) throws IOException {
+            int columns = columns();
+            for (int k = 0; k < nodes; k++) {
+                int column = k % columns;
+                if (column + 1 < columns && k + 1 < nodes) {
+                    out.road(firstId + k, firstId + k + 1);
+                }
+                if (k + columns < nodes && (column == 0 || unit(~seed, k) >= MISSING_STREETS)) {
+                    out.road(firstId + k, firstId + k + columns);
+                }
+            }
+        }
+    }
+
+    private static void writeGeometric(MapWriter out, int nodes, long seed) throws IOException {
+        int cells = (nodes + 1) / 2;
+        int columns = (int) Math.ceil(Math.sqrt(cells));
+        for (int i = 0; i < nodes; i++) {
+            out.intersection(i, geometricX(i, columns, seed), geometricY(i, columns, seed));
+        }
+
+        // Each pair of cells is checked once, from the earlier one: the same cell, then east, northwest, north
+        // and northeast
+        int[][] neighborCells = {{1, 0}, {-1, 1}, {0, 1}, {1, 1}};
+        for (int cell = 0; cell < cells; cell++) {
+            int cellX = cell % columns;
+            int cellY = cell / columns;
+            for (int i = 2 * cell; i < Math.min(nodes, 2 * cell + 2); i++) {
+                double x = geometricX(i, columns, seed);
+                double y = geometricY(i, columns, seed);
+                if (i % 2 == 0 && i + 1 < nodes) {
+                    writeIfClose(out, i, x, y, i + 1, columns, seed);
+                }
+                for (int[] offset : neighborCells) {
+                    int otherX = cellX + offset[0];
+                    int other = (cellY + offset[1]) * columns + otherX;
+                    if (otherX < 0 || otherX >= columns || other >= cells) continue;
+                    for (int j = 2 * other; j < Math.min(nodes, 2 * other + 2); j++) {
+                        writeIfClose(out, i, x, y, j, columns, seed);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void writeIfClose(MapWriter out, int i, double x, double y, int j, int columns, long seed)
+            throws IOException {
+        double dx = geometricX(j, columns, seed) - x;
+        double dy = geometricY(j, columns, seed) - y;
+        if (dx * dx + dy * dy < RADIUS * RADIUS) {
+            out.road(i, j);
+        }
+    }
+
+    private static double geometricX(int i, int columns, long seed) {
+        return ((i / 2) % columns + unit(seed, 2L * i)) * CELL;
+    }
+
+    private static double geometricY(int i, int columns, long seed) {
+        return ((i / 2) / columns + unit(seed, 2L * i + 1)) * CELL;
+    }
+
+    private static void writeHighways(MapWriter out, int nodes, long seed) throws IOException {
+        int cityCount = (int) Math.max(2, Math.round(Math.sqrt(nodes) / 20));
+        // Cities sit far enough apart that they'd rarely overlap, even big ones
+        double citySide = Math.sqrt((double) nodes / cityCount) * BLOCK;
+        double side = Math.sqrt(cityCount) * Math.max(CITY_SPACING, 2 * citySide);
+        double[] centerX = new double[cityCount];
+        double[] centerY = new double[cityCount];
+        for (int c = 0; c < cityCount; c++) {
+            centerX[c] = unit(~seed, 2L * c) * side;
+            centerY[c] = unit(~seed, 2L * c + 1) * side;
+        }
+
+        List<int[]> links = new ArrayList<>();
+        Set<Long> linked = new HashSet<>();
+        for (int c = 0; c < cityCount; c++) {
+            int nearestBefore = -1;
+            int nearest = -1;
+            for (int other = 0; other < cityCount; other++) {
+                if (other == c) continue;
+                double d = Math.hypot(centerX[c] - centerX[other], centerY[c] - centerY[other]);
+                if (other < c && (nearestBefore < 0 || d < Math.hypot(centerX[c] - centerX[nearestBefore],
+                        centerY[c] - centerY[nearestBefore]))) {
+                    nearestBefore = other;
+                }
+                if (nearest < 0 || d < Math.hypot(centerX[c] - centerX[nearest], centerY[c] - centerY[nearest])) {
+                    nearest = other;
+                }
+            }
+            for (int other : new int[]{nearestBefore, nearest}) {
+                if (other >= 0 && linked.add((long) Math.min(c, other) * cityCount + Math.max(c, other))) {
+                    links.add(new int[]{c, other});
+                }
+            }
+        }
+
+        double centerDistance = 0;
+        for (int[] link : links) {
+            centerDistance += Math.hypot(centerX[link[0]] - centerX[link[1]], centerY[link[0]] - centerY[link[1]]);
+        }
+        int highwayNodes = (int) Math.min(nodes / 10, centerDistance / HIGHWAY_SPACING);
+        int cityNodes = nodes - highwayNodes;
+
+        GridCity[] cities = new GridCity[cityCount];
+        int firstId = 0;
+        for (int c = 0; c < cityCount; c++) {
+            int size = cityNodes / cityCount + (c < cityNodes % cityCount ? 1 : 0);
+            double halfSide = Math.sqrt(size) * BLOCK / 2;
+            cities[c] = new GridCity(firstId, size, centerX[c] - halfSide, centerY[c] - halfSide, seed + c);
+            firstId += size;
+        }
+
+        // Each highway runs between the intersections of its two cities nearest the other city
+        int[] ends = new int[2 * links.size()];
+        double[] lengths = new double[links.size()];
+        double totalLength = 0;
+        for (int l = 0; l < links.size(); l++) {
+            GridCity a = cities[links.get(l)[0]];
+            GridCity b = cities[links.get(l)[1]];
+            int aEnd = a.nodeNear(centerX[links.get(l)[1]], centerY[links.get(l)[1]]);
+            int bEnd = b.nodeNear(centerX[links.get(l)[0]], centerY[links.get(l)[0]]);
+            ends[2 * l] = aEnd;
+            ends[2 * l + 1] = bEnd;
+            lengths[l] = Math.hypot(a.x(aEnd) - b.x(bEnd), a.y(aEnd) - b.y(bEnd));
+            totalLength += lengths[l];
+        }
+
+        // Highway intersections are shared out by length, the leftovers one each to the first highways
+        int[] stops = new int[links.size()];
+        int shared = 0;
+        for (int l = 0; l < links.size(); l++) {
+            stops[l] = totalLength == 0 ? 0 : (int) (highwayNodes * lengths[l] / totalLength);
+            shared += stops[l];
+        }
+        for (int l = 0; shared < highwayNodes; l = (l + 1) % links.size()) {
+            stops[l]++;
+            shared++;
+        }
+
+        for (GridCity city : cities) {
+            city.writeIntersections(out);
+        }
+        int id = cityNodes;
+        for (int l = 0; l < links.size(); l++) {
+            GridCity a = cities[links.get(l)[0]];
+            GridCity b = cities[links.get(l)[1]];
+            double ax = a.x(ends[2 * l]);
+            double ay = a.y(ends[2 * l]);
+            double bx = b.x(ends[2 * l + 1]);
+            double by = b.y(ends[2 * l + 1]);
+            for (int s = 1; s <= stops[l]; s++) {
+                double along = (double) s / (stops[l] + 1);
+                out.intersection(id, ax + (bx - ax) * along + (unit(seed, ~(2L * id)) - 0.5) * BLOCK,
+                        ay + (by - ay) * along + (unit(seed, ~(2L * id + 1)) - 0.5) * BLOCK);
+                id++;
+            }
+        }
+
+        for (GridCity city : cities) {
+            city.writeRoads(out);
+        }
+        id = cityNodes;
+        for (int l = 0; l < links.size(); l++) {
+            int previous = cities[links.get(l)[0]].firstId() + ends[2 * l];
+            for (int s = 0; s < stops[l]; s++) {
+                out.road(previous, id);
+                previous = id++;
+            }
+            out.road(previous, cities[links.get(l)[1]].firstId() + ends[2 * l + 1]);
+        }
+    }
+
+    /**
+     * @return a number in [0, 1) that only depends on seed and index (the SplitMix64 finalizer)
+     */
+    private static double unit(long seed, long index) {
+        long z = seed * 0x9E3779B97F4A7C15L + index;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z ^= z >>> 31;
+        return (z >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Writes the lines without String.format, which would take most of the time on big maps.
+     */
+    private static final class MapWriter implements Closeable {
+        private final Writer out;
+        private final StringBuilder line = new StringBuilder(64);
+        private long roads;
+
+        MapWriter(BufferedWriter out) {
+            this.out = out;
+        }
+
+        void intersection(int id, double x, double y) throws IOException {
+            line.setLength(0);
+            line.append("i\ti").append(id).append('\t');
+            appendDegrees(ORIGIN_LATITUDE + y / METRES_PER_DEGREE_LATITUDE);
+            line.append('\t');
+            appendDegrees(ORIGIN_LONGITUDE + x / METRES_PER_DEGREE_LONGITUDE);
+            line.append('\n');
+            out.append(line);
+        }
+
+        void road(int from, int to) throws IOException {
+            roads++;
+            line.setLength(0);
+            line.append("r\tr").append(roads).append("\ti").append(from).append("\ti").append(to).append('\n');
+            out.append(line);
+        }
+
+        /**
+         * Appends degrees with 6 decimals like the maps in the repo, about 10cm
+         */
+        private void appendDegrees(double degrees) {
+            long micro = Math.round(Math.abs(degrees) * 1e6);
+            if (degrees < 0 && micro != 0) line.append('-');
+            line.append(micro / 1_000_000).append('.');
+            String fraction = Long.toString(micro % 1_000_000);
+            for (int i = fraction.length(); i < 6; i++) line.append('0');
+            line.append(fraction);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package abruzese.bench;
+
+import abruzese.graph.ALGraph;
+import abruzese.graph.EdgeCursor;
+import abruzese.graph.edges.Road;
+import abruzese.graph.vertices.Intersection;
+import abruzese.util.MapBuilder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Loads a map into an ALGraph and times removing a random tenth of its intersections in one removeAll, the way a
+ * batch of road closures or clipping a map to a region would, and then clearing every edge left. The reverse index
+ * removals read is built on the first one, so its build is timed on its own first.
+ * <p>
+ * Usage: java abruzese.bench.RemovalBenchmark [map.txt | nodes] [--fraction 0.1] [--dir path]
+ * <p>
+ * Given a number of nodes instead of a map it uses a grid map of that size, written to the system temp directory
+ * (or --dir) if an earlier run hasn't already. The default is a 1M intersection grid.
+ */
+public class RemovalBenchmark {
+    public static void main(String[] args) throws IOException {
+        String map = null;
+        int nodes = 1_000_000;
+        double fraction = 0.1;
+        Path dir = Path.of(System.getProperty("java.io.tmpdir"));
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--fraction" -> fraction = Double.parseDouble(args[++i]);
+                case "--dir" -> dir = Path.of(args[++i]);
+                default -> {
+                    if (args[i].matches("\\d+[KkMm]?")) {
+                        nodes = MapGenerator.parseCount(args[i]);
+                    } else {
+                        map = args[i];
+                    }
+                }
+            }
+        }
+        if (map == null) map = MapGenerator.generateIfMissing(MapGenerator.Kind.GRID, nodes, dir).toString();
+
+        ALGraph<Intersection, Road> graph = (ALGraph<Intersection, Road>) MapBuilder.buildFromFile(map);
+        int edges = countEdges(graph);
+
+        // Sorted first so the same intersections are picked however the graph orders them
+        List<Intersection> vertices = new ArrayList<>(graph.getVertices());
+        vertices.sort(Comparator.comparing(Intersection::intersectionID));
+        Collections.shuffle(vertices, new Random(172));
+        List<Intersection> removed = vertices.subList(0, (int) (vertices.size() * fraction));
+        System.out.printf(Locale.ROOT, "%s: %d intersections, %d edges, removing %d%n", map, vertices.size(), edges,
+                removed.size());
+
+        System.gc();
+        long before = LoadBenchmark.usedHeap();
+        long start = System.nanoTime();
+        graph.forEachInEdge(vertices.getFirst(), (from, road) -> {
+        });
+        double indexMillis = (System.nanoTime() - start) / 1e6;
+        System.gc();
+        // A symmetric map shares its adjacency list as the index, so that takes no memory
+        System.out.printf(Locale.ROOT, "  reverse index   %8.1f ms, %d MB%n", indexMillis,
+                Math.max(0, LoadBenchmark.usedHeap() - before) >> 20);
+
+        start = System.nanoTime();
+        graph.removeAll(removed);
+        double removeMillis = (System.nanoTime() - start) / 1e6;
+        System.out.printf(Locale.ROOT, "  removeAll       %8.1f ms, %.3f us per intersection, %d left%n",
+                removeMillis, removeMillis * 1000 / removed.size(), graph.size());
+
+        int left = countEdges(graph);
+        start = System.nanoTime();
+        graph.clearEdges();
+        System.out.printf(Locale.ROOT, "  clearEdges      %8.1f ms for %d edges%n", (System.nanoTime() - start) / 1e6,
+                left);
+    }
+
+    private static int countEdges(ALGraph<Intersection, Road> graph) {
+        int count = 0;
+        EdgeCursor<Intersection, Road> edges = graph.edgeCursor();
+        while (edges.next()) {
+            count++;
+        }
+        return count;
+    }
+}
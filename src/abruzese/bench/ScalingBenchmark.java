@@ -0,0 +1,194 @@
+package abruzese.bench;
+
+import abruzese.graph.CSRGraph;
+import abruzese.graph.Graph;
+import abruzese.graph.edges.Road;
+import abruzese.graph.vertices.Intersection;
+import abruzese.gui.MapPanel;
+import abruzese.hashtable.HashTable;
+import abruzese.util.MapBuilder;
+import abruzese.util.SpatialIndex;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates maps of growing size with {@link MapGenerator} and measures, at each size, how long MapBuilder takes to
+ * load it and how much heap that uses, the spread of Dijkstra and A* query times on the frozen graph the console
+ * routes on, and how long MapPanel takes to show the whole map, and a zoomed in view from nothing and after panning a
+ * quarter of the view. Tiles are drawn on MapPanel's render thread, so each of those is timed twice: how long paint
+ * held the caller up, which is all the event thread waits for, and how long until every tile was in.
+ * <p>
+ * Usage: java abruzese.bench.ScalingBenchmark [grid|geometric|highways] [sizes...] [--queries N] [--dir path]
+ * [--no-render]
+ * <p>
+ * The sizes default to 1K 10K 100K 1M. Maps are written to the system temp directory unless --dir says otherwise,
+ * and a map that's already there from an earlier run is reused. The biggest maps need a large -Xmx (50M
+ * intersections wants tens of GB) and --no-render, since showing the whole map draws every road.
+ */
+public class ScalingBenchmark {
+    private static final int VIEW_WIDTH = 1280;
+    private static final int VIEW_HEIGHT = 800;
+    private static final int RENDERS = 3;
+    private static final double ZOOM = 16;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        MapGenerator.Kind kind = MapGenerator.Kind.GRID;
+        List<Integer> sizes = new ArrayList<>();
+        int queries = 100;
+        Path dir = Path.of(System.getProperty("java.io.tmpdir"));
+        boolean render = true;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--queries" -> queries = Integer.parseInt(args[++i]);
+                case "--dir" -> dir = Path.of(args[++i]);
+                case "--no-render" -> render = false;
+                case "grid", "geometric", "highways" -> kind = MapGenerator.Kind.fromName(args[i]);
+                default -> sizes.add(MapGenerator.parseCount(args[i]));
+            }
+        }
+        if (sizes.isEmpty()) sizes.addAll(List.of(1_000, 10_000, 100_000, 1_000_000));
+
+        for (int size : sizes) {
+            run(MapGenerator.generateIfMissing(kind, size, dir), size, queries, render);
+        }
+    }
+
+    private static void run(Path file, int size, int queries, boolean render) throws IOException,
+            InterruptedException {
+        System.gc();
+        long before = LoadBenchmark.usedHeap();
+        LoadBenchmark.resetPeakHeap();
+        long start = System.nanoTime();
+        Graph<Intersection, Road> loaded = MapBuilder.buildFromFile(file.toString());
+        double loadMillis = (System.nanoTime() - start) / 1e6;
+        long peak = LoadBenchmark.peakHeap() - before;
+        System.gc();
+        long loadedBytes = LoadBenchmark.usedHeap() - before;
+
+        // The console routes on the frozen graph, so that's what gets timed
+        CSRGraph<Intersection, Road> graph = loaded.freeze();
+        loaded = null;
+        System.gc();
+        long frozenBytes = LoadBenchmark.usedHeap() - before;
+
+        System.out.printf(Locale.ROOT, "%s: %d intersections, %d roads%n", file.getFileName(), size,
+                graph.edgeCount() / 2);
+        System.out.printf(Locale.ROOT, "  load      %8.0f ms, peak heap %d MB, ALGraph %d MB, CSRGraph %d MB%n",
+                loadMillis, peak >> 20, loadedBytes >> 20, frozenBytes >> 20);
+
+        Random random = new Random(172);
+        Intersection[] from = new Intersection[queries];
+        Intersection[] to = new Intersection[queries];
+        for (int i = 0; i < queries; i++) {
+            from[i] = graph.vertexAt(random.nextInt(graph.size()));
+            to[i] = graph.vertexAt(random.nextInt(graph.size()));
+        }
+        HashTable<Intersection, double[]> coordinates = new HashTable<>(graph.size() * 2);
+        for (Intersection intersection : graph) {
+            coordinates.put(intersection, new double[]{intersection.latitude(), intersection.longitude()});
+        }
+
+        printLatencies("dijkstra", time(queries, i -> graph.path(from[i], to[i])));
+        printLatencies("a*", time(queries, i -> graph.pathAStar(from[i], to[i], coordinates)));
+
+        if (render) {
+            SpatialIndex index = SpatialIndex.build(graph);
+            BufferedImage screen = new BufferedImage(VIEW_WIDTH, VIEW_HEIGHT, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = screen.createGraphics();
+            // The first paint warms up Java2D
+            paint(new MapPanel(graph, index, null), g2d);
+
+            long[][] full = new long[2][RENDERS];
+            long[][] cold = new long[2][RENDERS];
+            long[][] pan = new long[2][RENDERS];
+            long[] warm = new long[RENDERS];
+            for (int i = 0; i < RENDERS; i++) {
+                // New panels each time so none of their tiles are cached
+                paint(new MapPanel(graph, index, null), g2d, full, i);
+
+                MapPanel panel = new MapPanel(graph, index, null);
+                panel.setSize(VIEW_WIDTH, VIEW_HEIGHT);
+                panel.zoom(ZOOM);
+                paint(panel, g2d, cold, i);
+                panel.panBy(VIEW_WIDTH / 4, 0);
+                paint(panel, g2d, pan, i);
+                warm[i] = paint(panel, g2d)[0];
+            }
+            g2d.dispose();
+            System.out.printf(Locale.ROOT, "  render    whole map %.1f ms, at %.0fx zoom %.1f ms, after a pan %.1f ms, "
+                            + "median of %d (%dx%d view)%n", median(full[1]), ZOOM, median(cold[1]), median(pan[1]),
+                    RENDERS, VIEW_WIDTH, VIEW_HEIGHT);
+            System.out.printf(Locale.ROOT, "  paint     whole map %.1f ms, at %.0fx zoom %.1f ms, after a pan %.1f ms, "
+                            + "all cached %.1f ms%n", median(full[0]), ZOOM, median(cold[0]), median(pan[0]),
+                    median(warm));
+        }
+    }
+
+    private static double median(long[] nanos) {
+        Arrays.sort(nanos);
+        return nanos[nanos.length / 2] / 1e6;
+    }
+
+    private static void paint(MapPanel panel, Graphics2D g2d, long[][] nanos, int i) throws InterruptedException {
+        long[] times = paint(panel, g2d);
+        nanos[0][i] = times[0];
+        nanos[1][i] = times[1];
+    }
+
+    /**
+     * Paints the panel and waits for the tiles it asked for.
+     *
+     * @return how long paint took, then how long until the tiles were all drawn
+     */
+    private static long[] paint(MapPanel panel, Graphics2D g2d) throws InterruptedException {
+        panel.setSize(VIEW_WIDTH, VIEW_HEIGHT);
+        long start = System.nanoTime();
+        panel.paint(g2d);
+        long painted = System.nanoTime() - start;
+        panel.awaitTiles();
+        return new long[]{painted, System.nanoTime() - start};
+    }
+
+    private interface Query {
+        void run(int i);
+    }
+
+    /**
+     * Runs every query once to warm up, then again timing each one.
+     *
+     * @return the time each query took, sorted
+     */
+    private static long[] time(int queries, Query query) {
+        for (int i = 0; i < queries; i++) {
+            query.run(i);
+        }
+        long[] nanos = new long[queries];
+        for (int i = 0; i < queries; i++) {
+            long start = System.nanoTime();
+            query.run(i);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos;
+    }
+
+    private static void printLatencies(String name, long[] sorted) {
+        System.out.printf(Locale.ROOT, "  %-9s p50 %8.3f  p90 %8.3f  p99 %8.3f  max %8.3f ms%n", name,
+                percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99),
+                sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+}
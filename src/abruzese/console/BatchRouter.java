@@ -0,0 +1,207 @@
+package abruzese.console;
+
+import abruzese.graph.Graph;
+import abruzese.graph.edges.Road;
+import abruzese.graph.vertices.Intersection;
+import abruzese.util.StreetMap;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Routes a file of intersection ID pairs on a pool of worker threads that all share one loaded map.
+ * <p>
+ * Each input line is a start and end intersection ID separated by a tab (or spaces), blank lines and lines
+ * starting with # are skipped. Each output line is
+ * <pre>
+ *     start    end    distance (meters)    intersections on the route
+ * </pre>
+ * with "unreachable" or "not found" in place of the distance when there's no route. Results come out in the same
+ * order as the input.
+ * <p>
+ * Only a fixed window of routes is in flight at a time: once it is full the reader waits for the oldest route and
+ * writes it before reading another line, so a file of millions of pairs never has to fit in memory.
+ */
+public class BatchRouter {
+    // Routes in flight per worker thread, enough to keep the workers busy while the oldest result gets written
+    private static final int WINDOW_PER_THREAD = 64;
+
+    private final StreetMap streetMap;
+    private final int threads;
+
+    public BatchRouter(StreetMap streetMap, int threads) {
+        if (threads < 1) throw new IllegalArgumentException("Need at least one thread");
+        this.streetMap = streetMap;
+        this.threads = threads;
+    }
+
+    /**
+     * Routes every pair from input into output and prints a summary to report once done.
+     */
+    public void run(Reader input, Writer output, PrintStream report) throws IOException {
+        BufferedReader reader = new BufferedReader(input);
+        BufferedWriter writer = new BufferedWriter(output);
+        LatencyHistogram latencies = new LatencyHistogram();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<String>> window = new ArrayDeque<>();
+        int windowSize = threads * WINDOW_PER_THREAD;
+        long routes = 0;
+
+        // Build the preprocessed data up front so it doesn't land on the first routes' latency
+        switch (streetMap.getRoutingStrategy()) {
+            case CONTRACTION_HIERARCHIES -> streetMap.getContractionHierarchy();
+            case A_STAR_LANDMARKS -> streetMap.getLandmarks();
+            default -> { }
+        }
+
+        long start = System.nanoTime();
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+
+                String[] ids = line.split("\\s+");
+                if (ids.length < 2) {
+                    throw new IOException("Expected two intersection IDs on line: " + line);
+                }
+
+                if (window.size() == windowSize) {
+                    writeResult(window.poll(), writer);
+                }
+                window.add(workers.submit(() -> route(ids[0], ids[1], latencies)));
+                routes++;
+            }
+            while (!window.isEmpty()) {
+                writeResult(window.poll(), writer);
+            }
+            writer.flush();
+        } finally {
+            workers.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        report.printf(Locale.ROOT, "Routed %d pairs on %d threads in %.2f seconds (%.1f routes/s)\n",
+                routes, threads, seconds, routes / seconds);
+        if (routes > 0) {
+            report.printf(Locale.ROOT, "Latency p50 %.3f ms, p99 %.3f ms, max %.3f ms\n",
+                    latencies.percentile(50) / 1e3, latencies.percentile(99) / 1e3, latencies.max() / 1e3);
+        }
+    }
+
+    private static void writeResult(Future<String> result, Writer writer) throws IOException {
+        try {
+            writer.write(result.get());
+            writer.write('\n');
+        } catch (ExecutionException e) {
+            throw new IOException("Routing failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a route");
+        }
+    }
+
+    private String route(String startID, String endID, LatencyHistogram latencies) {
+        long start = System.nanoTime();
+        Intersection startIntersection = streetMap.getIntersection(startID);
+        Intersection endIntersection = streetMap.getIntersection(endID);
+
+        String result;
+        if (startIntersection == null || endIntersection == null) {
+            result = "not found\t0";
+        } else {
+            List<Intersection> path = streetMap.findPath(startIntersection, endIntersection);
+            if (path.isEmpty()) {
+                result = "unreachable\t0";
+            } else {
+                result = String.format(Locale.ROOT, "%.1f\t%d", length(path), path.size());
+            }
+        }
+        latencies.record((System.nanoTime() - start) / 1000);
+        return startID + "\t" + endID + "\t" + result;
+    }
+
+    private double length(List<Intersection> path) {
+        Graph<Intersection, Road> graph = streetMap.getStreetGraph();
+        double distance = 0;
+        for (int i = 0; i + 1 < path.size(); i++) {
+            distance += graph.get(path.get(i), path.get(i + 1)).getDistance();
+        }
+        return distance;
+    }
+
+    /**
+     * Runs a batch from the command line arguments, writing to standard out if there's no output file.
+     */
+    public static void runFiles(StreetMap streetMap, String inputFile, String outputFile, int threads)
+            throws IOException {
+        BatchRouter router = new BatchRouter(streetMap, threads);
+        try (Reader input = new InputStreamReader(new FileInputStream(inputFile), StandardCharsets.UTF_8)) {
+            if (outputFile == null) {
+                Writer output = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+                router.run(input, output, System.err);
+            } else {
+                try (Writer output = new OutputStreamWriter(new FileOutputStream(outputFile), StandardCharsets.UTF_8)) {
+                    router.run(input, output, System.out);
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts latencies in microseconds in log spaced buckets, 32 per power of two, so percentiles are within about
+     * 3% and memory doesn't grow with the number of routes. Safe to record into from many threads.
+     */
+    private static final class LatencyHistogram {
+        private static final int SUB_BUCKETS = 32;
+        private static final int BUCKETS = 2 * SUB_BUCKETS + 64 * SUB_BUCKETS;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+        void record(long micros) {
+            counts.incrementAndGet(bucket(Math.max(0, micros)));
+        }
+
+        private static int bucket(long value) {
+            if (value < 2 * SUB_BUCKETS) return (int) value;
+            // Keep the top 6 bits: the leading one and 5 more to pick one of 32 sub buckets
+            int shift = 63 - Long.numberOfLeadingZeros(value) - 5;
+            return 2 * SUB_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+        }
+
+        private static long lowerBound(int bucket) {
+            if (bucket < 2 * SUB_BUCKETS) return bucket;
+            int shift = (bucket - 2 * SUB_BUCKETS) / SUB_BUCKETS + 1;
+            long top = SUB_BUCKETS + (bucket - 2 * SUB_BUCKETS) % SUB_BUCKETS;
+            return top << shift;
+        }
+
+        /**
+         * @return the latency in microseconds that percent of the recorded latencies are at or below
+         */
+        long percentile(double percent) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) total += counts.get(i);
+
+            long rank = Math.max(1, (long) Math.ceil(total * percent / 100));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= rank) return lowerBound(i);
+            }
+            return 0;
+        }
+
+        long max() {
+            for (int i = BUCKETS - 1; i >= 0; i--) {
+                if (counts.get(i) > 0) return lowerBound(i);
+            }
+            return 0;
+        }
+    }
+}
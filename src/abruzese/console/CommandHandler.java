@@ -3,9 +3,10 @@ package abruzese.console;
 import abruzese.graph.edges.Road;
 import abruzese.graph.vertices.Intersection;
 import abruzese.hashtable.HashTable;
+import abruzese.util.Route;
+import abruzese.util.RoutingStrategy;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 
 public class CommandHandler {
@@ -29,9 +30,15 @@ public class CommandHandler {
             case "directions":
                 handleDirections(args);
                 break;
+            case "route":
+                handleRoute(args);
+                break;
             case "highlight":
                 handleHighlight(args);
                 break;
+            case "routing":
+                handleRouting(args);
+                break;
             default:
                 System.out.println("Unknown command. Type 'help' for available commands.");
         }
@@ -41,10 +48,12 @@ public class CommandHandler {
         System.out.println("Available commands:");
         System.out.println("  help                          - Show this help message");
         System.out.println("  search <intersection>         - Show information about an intersection");
-        System.out.println("  directions <int1> <int2> ...  - Show directions between multiple intersections");
+        System.out.println("  directions <int1> <int2> ...  - Show directions between multiple intersections (or lat,lon points)");
+        System.out.println("  route <lat1> <lon1> <lat2> <lon2> - Show directions between two points, starting and ending on the closest roads");
         System.out.println("  highlight <step>              - Highlight a specific direction step after directions command");
         System.out.println("  highlight <start>-<end>       - Highlight a range of direction steps after directions command");
         System.out.println("  highlight clear               - Clear all highlights");
+        System.out.println("  routing [strategy]            - Show or set the routing strategy (auto, dijkstra, dial, astar, alt, ch)");
         System.out.println("  exit                          - Exit the program");
     }
 
@@ -67,85 +76,74 @@ public class CommandHandler {
     }
 
     private void searchRoad(String roadId) {
-        boolean found = false;
-
-        for (HashTable.Entry<Intersection, Intersection> edge : console.getStreetMap().getStreetGraph().getEdges()) {
-            Road road = console.getStreetMap().getStreetGraph().get(edge.getKey(), edge.getValue());
-            if (road.roadID.equals(roadId)) {
-                System.out.println("ID: " + road.roadID);
-                System.out.printf("Distance: %s\n", formatDistance(road.getDistance()));
-                System.out.println("Connects:");
-                System.out.println("  - " + edge.getKey().intersectionID());
-                System.out.println("  - " + edge.getValue().intersectionID());
-
-                // Highlight on map if in GUI mode
-                if (console.getMapPanel() != null) {
-                    // Create a single-step direction to highlight this road
-                    List<DirectionStep> steps = new ArrayList<>();
-                    steps.add(new DirectionStep(
-                            edge.getKey(),
-                            edge.getValue(),
-                            road,
-                            "Road " + road.roadID,
-                            road.getDistance(),
-                            1
-                    ));
-                    console.getMapPanel().highlightSteps(steps);
-                }
-
-                found = true;
-                break;
-            }
-        }
+        List<HashTable.Entry<Intersection, Intersection>> roads = console.getStreetMap().getRoad(roadId);
 
-        if (!found) {
+        if (roads.isEmpty()) {
             System.out.println("Road not found: " + roadId);
             if (console.getMapPanel() != null) {
                 console.getMapPanel().clearHighlights();
             }
+            return;
+        }
+
+        HashTable.Entry<Intersection, Intersection> edge = roads.getFirst();
+        Road road = console.getStreetMap().getStreetGraph().get(edge.getKey(), edge.getValue());
+        System.out.println("ID: " + road.roadID);
+        System.out.printf("Distance: %s\n", formatDistance(road.getDistance()));
+        System.out.println("Connects:");
+        System.out.println("  - " + edge.getKey().intersectionID());
+        System.out.println("  - " + edge.getValue().intersectionID());
+
+        // Highlight on map if in GUI mode
+        if (console.getMapPanel() != null) {
+            // Create a single-step direction to highlight this road
+            List<DirectionStep> steps = new ArrayList<>();
+            steps.add(new DirectionStep(
+                    edge.getKey(),
+                    edge.getValue(),
+                    road,
+                    "Road " + road.roadID,
+                    road.getDistance(),
+                    1
+            ));
+            console.getMapPanel().highlightSteps(steps);
         }
     }
 
     private void searchIntersection(String intersectionId) {
+        Intersection intersection = console.getStreetMap().getIntersection(intersectionId);
 
-        boolean found = false;
-
-        for (Intersection intersection : console.getStreetMap().getStreetGraph()) {
-            if (intersection.intersectionID().equals(intersectionId)) {
-                System.out.println("ID: " + intersection.intersectionID());
-                System.out.println("Latitude: " + intersection.latitude());
-                System.out.println("Longitude: " + intersection.longitude());
-
-                // Count and list connected intersections
-                Collection<Intersection> neighbors = console.getStreetMap().getStreetGraph().neighbors(intersection);
-                System.out.println("Connected to " + neighbors.size() + " other intersection(s):");
-                for (Intersection neighbor : neighbors) {
-                    Road road = console.getStreetMap().getStreetGraph().get(intersection, neighbor);
-                    System.out.printf("  - %s (Road: %s, Distance: %.2f meters)\n",
-                            neighbor.intersectionID(), road.roadID, road.getDistance());
-                }
-
-                // Highlight on map if in GUI mode
-                if (console.getMapPanel() != null) {
-                    console.getMapPanel().highlightIntersection(intersection);
-                }
-
-                found = true;
-                break;
-            }
-        }
-
-        if (!found) {
+        if (intersection == null) {
             System.out.println("Intersection not found: " + intersectionId);
             if (console.getMapPanel() != null) {
                 console.getMapPanel().clearHighlights();
             }
+            return;
+        }
+
+        System.out.println("ID: " + intersection.intersectionID());
+        System.out.println("Latitude: " + intersection.latitude());
+        System.out.println("Longitude: " + intersection.longitude());
+
+        // Count and list connected intersections
+        List<String> connections = new ArrayList<>();
+        console.getStreetMap().getStreetGraph().forEachOutEdge(intersection, (neighbor, road) ->
+                connections.add(String.format("  - %s (Road: %s, Distance: %.2f meters)",
+                        neighbor.intersectionID(), road.roadID, road.getDistance())));
+        System.out.println("Connected to " + connections.size() + " other intersection(s):");
+        for (String connection : connections) {
+            System.out.println(connection);
+        }
+
+        // Highlight on map if in GUI mode
+        if (console.getMapPanel() != null) {
+            console.getMapPanel().highlightIntersection(intersection);
         }
     }
 
     private void handleDirections(String[] args) {
         if (args.length < 2) {
-            System.out.println("Usage: directions <intersection1> <intersection2> [intersection3...]");
+            System.out.println("Usage: directions <intersection1|lat,lon> <intersection2|lat,lon> [intersection3...]");
             return;
         }
 
@@ -157,9 +155,10 @@ public class CommandHandler {
 
             // Calculate paths between consecutive waypoints
             for (int i = 0; i < args.length - 1; i++) {
-                List<Intersection> pathSegment = console.getStreetMap().findPath(args[i], args[i + 1]);
+                Route route = console.getStreetMap().findRoute(args[i], args[i + 1]);
+                List<Intersection> pathSegment = route.path();
 
-                if (pathSegment.isEmpty()) {
+                if (route.isEmpty()) {
                     System.out.printf("No path found between %s and %s\n", args[i], args[i + 1]);
                     return;
                 }
@@ -170,7 +169,7 @@ public class CommandHandler {
                 for (int j = 0; j < pathSegment.size() - 1; j++) {
                     Intersection current = pathSegment.get(j);
                     Intersection next = pathSegment.get(j + 1);
-                    Road road = console.getStreetMap().getStreetGraph().get(current, next);
+                    Road road = route.roads().get(j);
                     double distance = road.getDistance();
                     totalDistance += distance;
 
@@ -253,6 +252,39 @@ public class CommandHandler {
         }
     }
 
+    private void handleRoute(String[] args) {
+        if (args.length != 4) {
+            System.out.println("Usage: route <lat1> <lon1> <lat2> <lon2>");
+            return;
+        }
+        handleDirections(new String[]{args[0] + "," + args[1], args[2] + "," + args[3]});
+    }
+
+    private void handleRouting(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Routing strategy: " + console.getStreetMap().getRoutingStrategy());
+            return;
+        }
+
+        try {
+            RoutingStrategy strategy = RoutingStrategy.fromName(args[0]);
+            console.getStreetMap().setRoutingStrategy(strategy);
+            if (strategy == RoutingStrategy.CONTRACTION_HIERARCHIES || strategy == RoutingStrategy.A_STAR_LANDMARKS) {
+                System.out.println("Preprocessing map...");
+                long start = System.currentTimeMillis();
+                if (strategy == RoutingStrategy.CONTRACTION_HIERARCHIES) {
+                    console.getStreetMap().getContractionHierarchy();
+                } else {
+                    console.getStreetMap().getLandmarks();
+                }
+                System.out.printf("Done in %.1f seconds\n", (System.currentTimeMillis() - start) / 1000.0);
+            }
+            System.out.println("Routing strategy set to " + strategy);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Usage: routing <auto|dijkstra|dial|astar|alt|ch>");
+        }
+    }
+
     private void handleHighlight(String[] args) {
         if (lastDirections == null) {
             System.out.println("No directions available. Please run 'directions' command first.");
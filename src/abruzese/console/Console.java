@@ -1,6 +1,7 @@
 package abruzese.console;
 
 import abruzese.gui.MapPanel;
+import abruzese.util.RoutingStrategy;
 import abruzese.util.StreetMap;
 
 import java.awt.*;
@@ -80,7 +81,7 @@ public class Console {
      */
     public static void main(String[] args) {
         if (args.length < 1) {
-            System.out.println("Usage: java Console <map.txt> [--show] [--directions startIntersection endIntersection]");
+            System.out.println("Usage: java Console <map.txt> [--show] [--directions start end] [--routing auto|dijkstra|dial|astar|alt|ch] [--batch routes.tsv [--out results.tsv] [--threads N]] [--convert map.img]");
             return;
         }
 
@@ -89,6 +90,10 @@ public class Console {
             boolean show = false;
             String startIntersection = null;
             String endIntersection = null;
+            String batchFile = null;
+            String outFile = null;
+            String imageFile = null;
+            int threads = Runtime.getRuntime().availableProcessors();
 
             // Parse command line arguments
             for (int i = 1; i < args.length; i++) {
@@ -101,19 +106,88 @@ public class Console {
                             startIntersection = args[++i];
                             endIntersection = args[++i];
                         } else {
-                            System.err.println("--directions requires two intersection IDs");
+                            System.err.println("--directions requires two intersection IDs or lat,lon points");
+                            return;
+                        }
+                        break;
+                    case "--routing":
+                        if (i + 1 < args.length) {
+                            try {
+                                console.getStreetMap().setRoutingStrategy(RoutingStrategy.fromName(args[++i]));
+                            } catch (IllegalArgumentException e) {
+                                System.err.println(e.getMessage());
+                                return;
+                            }
+                        } else {
+                            System.err.println("--routing requires a strategy (auto, dijkstra, dial, astar, alt or ch)");
+                            return;
+                        }
+                        break;
+                    case "--batch":
+                        if (i + 1 < args.length) {
+                            batchFile = args[++i];
+                        } else {
+                            System.err.println("--batch requires a file of intersection ID pairs");
+                            return;
+                        }
+                        break;
+                    case "--out":
+                        if (i + 1 < args.length) {
+                            outFile = args[++i];
+                        } else {
+                            System.err.println("--out requires a file name");
+                            return;
+                        }
+                        break;
+                    case "--convert":
+                        if (i + 1 < args.length) {
+                            imageFile = args[++i];
+                        } else {
+                            System.err.println("--convert requires an image file name");
+                            return;
+                        }
+                        break;
+                    case "--threads":
+                        if (i + 1 < args.length) {
+                            try {
+                                threads = Integer.parseInt(args[++i]);
+                            } catch (NumberFormatException e) {
+                                System.err.println("--threads requires a number");
+                                return;
+                            }
+                        } else {
+                            System.err.println("--threads requires a number");
+                            return;
+                        }
+                        if (threads < 1) {
+                            System.err.println("--threads must be at least 1");
                             return;
                         }
                         break;
                 }
             }
 
+            // Save the map as an image and exit
+            if (imageFile != null) {
+                long start = System.nanoTime();
+                console.getStreetMap().saveImage(imageFile);
+                System.out.printf("Wrote %s in %d ms%n", imageFile, (System.nanoTime() - start) / 1_000_000);
+                return;
+            }
+
+            // Route a whole file and exit
+            if (batchFile != null) {
+                BatchRouter.runFiles(console.getStreetMap(), batchFile, outFile, threads);
+                return;
+            }
+
             // Launch GUI if requested
             if (show) {
                 console.setGuiMode(true);
                 Frame frame = new Frame("Street Map [" + args[0] + "]");
                 frame.setSize(800, 800);
-                MapPanel mapPanel = new MapPanel(console.getStreetMap().getStreetGraph(), console.commandHandler);
+                MapPanel mapPanel = new MapPanel(console.getStreetMap().getStreetGraph(),
+                        console.getStreetMap().getSpatialIndex(), console.commandHandler);
                 console.setMapPanel(mapPanel);
                 frame.add(mapPanel);
                 frame.addWindowListener(new java.awt.event.WindowAdapter() {
@@ -3,19 +3,67 @@ package abruzese.graph;
 import abruzese.graph.edges.EdgeWeight;
 import abruzese.hashtable.HashTable;
 import abruzese.priorityQueue.IndexedPriorityQueue;
+import abruzese.priorityQueue.IntIndexedDaryHeap;
+import abruzese.priorityQueue.IntPriorityQueue;
 
 import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.ToDoubleFunction;
 
 /**
  * AdjacencyListGraph is a graph implementation that uses an adjacency list
  * for efficient storage and operations. It supports Dijkstra's algorithm
  * for shortest path calculations.
+ * <p>
+ * Every search keeps its distances and previous vertices in tables local to
+ * the call, so any number of threads can search the same graph at once as
+ * long as nothing is modifying it.
+ * <p>
+ * The bidirectional searches, removing vertices and {@link #forEachInEdge}
+ * also need the edges into each vertex. That reverse index is built the
+ * first time one of them runs and kept up to date by every change after
+ * that, so removing a vertex only touches the edges in and out of it. Until
+ * then loading a map doesn't pay for it. When every edge has a twin going
+ * the other way with the very same weight object (as with the roads
+ * MapBuilder adds) the adjacency list is its own reverse and is shared, which stays true through
+ * adding and removing vertices. The first set or removeEdge after that
+ * copies it out into a reverse index of its own.
  *
  * @param <E> The type of elements in the graph
  * @param <W> The type of weight used for edges
  */
 public class ALGraph<E, W extends EdgeWeight> extends Graph<E, W> {
-    private final HashTable<E, HashTable<E, W>> adjacencyList = new HashTable<>();
+    private static final int INITIAL_SEARCH_CAPACITY = 64;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final HashTable<E, HashTable<E, W>> adjacencyList;
+    private final int neighborCapacity;
+    private volatile HashTable<E, HashTable<E, W>> reverseAdjacencyList;
+
+    public ALGraph() {
+        adjacencyList = new HashTable<>();
+        neighborCapacity = DEFAULT_CAPACITY;
+    }
+
+    /**
+     * Makes a graph with its tables already big enough, so loading a known number of vertices never has to grow
+     * the vertex table, and each vertex's neighbor table starts at a size that fits a typical vertex instead of 16
+     * slots.
+     *
+     * @param expectedVertices the number of vertices that will be added
+     * @param expectedDegree   the number of edges out of a typical vertex
+     */
+    public ALGraph(int expectedVertices, int expectedDegree) {
+        adjacencyList = new HashTable<>(capacityFor(expectedVertices));
+        neighborCapacity = capacityFor(expectedDegree);
+    }
+
+    /**
+     * @return a capacity that holds count entries without the table growing
+     */
+    private static int capacityFor(int count) {
+        return (int) (count / 0.75f) + 1;
+    }
 
     @Override
     public W get(E from, E to) {
@@ -35,15 +83,54 @@ public class ALGraph<E, W extends EdgeWeight> extends Graph<E, W> {
         Objects.requireNonNull(to, "Destination vertex cannot be null");
         Objects.requireNonNull(weight, "Edge weight cannot be null");
 
-        adjacencyList.putIfAbsent(from, new HashTable<>());
-        adjacencyList.putIfAbsent(to, new HashTable<>());
+        HashTable<E, HashTable<E, W>> reverse = ownReverse();
+        HashTable<E, W> edges = neighborsOrAdd(from);
+        neighborsOrAdd(to);
+        if (reverse != null) {
+            incomingOrAdd(reverse, from);
+            incomingOrAdd(reverse, to).put(from, weight);
+        }
+
+        return edges.put(to, weight);
+    }
+
+    /**
+     * @return the reverse index if it's been built, copied out first if it's still shared with the adjacency list
+     *         since the change about to be made could leave an edge without its twin
+     */
+    private HashTable<E, HashTable<E, W>> ownReverse() {
+        HashTable<E, HashTable<E, W>> reverse = reverseAdjacencyList;
+        if (reverse == adjacencyList) {
+            reverse = buildReverse();
+            reverseAdjacencyList = reverse;
+        }
+        return reverse;
+    }
+
+    private HashTable<E, W> incomingOrAdd(HashTable<E, HashTable<E, W>> reverse, E vertex) {
+        HashTable<E, W> incoming = reverse.get(vertex);
+        if (incoming == null) {
+            incoming = new HashTable<>(neighborCapacity);
+            reverse.put(vertex, incoming);
+        }
+        return incoming;
+    }
 
-        return adjacencyList.get(from).put(to, weight);
+    /**
+     * Only makes a neighbor table for vertices that don't have one yet, loading a map calls set twice per road
+     */
+    private HashTable<E, W> neighborsOrAdd(E vertex) {
+        HashTable<E, W> neighbors = adjacencyList.get(vertex);
+        if (neighbors == null) {
+            neighbors = new HashTable<>(neighborCapacity);
+            adjacencyList.put(vertex, neighbors);
+        }
+        return neighbors;
     }
 
     @Override
     public Set<E> getVertices() {
-        return adjacencyList.keySet();
+        return new KeyView<>(adjacencyList.keySet());
     }
 
     @Override
@@ -58,12 +145,77 @@ public class ALGraph<E, W extends EdgeWeight> extends Graph<E, W> {
         return edges;
     }
 
+    @Override
+    public EdgeCursor<E, W> edgeCursor() {
+        // Walks the slots of the tables directly so nothing is allocated per vertex or per edge
+        return new EdgeCursor<>() {
+            private int vertexSlot = -1;
+            private int edgeSlot = -1;
+            private HashTable<E, W> neighbors;
+            private E from;
+            private boolean finished;
+
+            @Override
+            public boolean next() {
+                if (finished) return false;
+                if (neighbors != null) edgeSlot = neighbors.nextSlot(edgeSlot + 1);
+                while (edgeSlot < 0) {
+                    vertexSlot = adjacencyList.nextSlot(vertexSlot + 1);
+                    if (vertexSlot < 0) {
+                        finished = true;
+                        return false;
+                    }
+                    from = adjacencyList.keyAt(vertexSlot);
+                    neighbors = adjacencyList.valueAt(vertexSlot);
+                    edgeSlot = neighbors.nextSlot(0);
+                }
+                return true;
+            }
+
+            @Override
+            public E from() {
+                return from;
+            }
+
+            @Override
+            public E to() {
+                return neighbors.keyAt(edgeSlot);
+            }
+
+            @Override
+            public W weight() {
+                return neighbors.valueAt(edgeSlot);
+            }
+        };
+    }
+
+    @Override
+    public void forEachOutEdge(E source, BiConsumer<? super E, ? super W> action) {
+        HashTable<E, W> neighbors = adjacencyList.get(source);
+        if (neighbors == null) {
+            throw new NoSuchElementException("Source vertex does not exist: " + source);
+        }
+        neighbors.forEach(action);
+    }
+
+    @Override
+    public Collection<E> neighbors(E source) {
+        HashTable<E, W> neighbors = adjacencyList.get(source);
+        if (neighbors == null) {
+            throw new NoSuchElementException("Source vertex does not exist: " + source);
+        }
+        return new ArrayList<>(neighbors.keySet());
+    }
+
     @Override
     public Collection<E> addAll(Collection<E> vertices) {
+        HashTable<E, HashTable<E, W>> reverse = reverseAdjacencyList;
         List<E> alreadyPresent = new ArrayList<>();
         for (E vertex : vertices) {
             if (!adjacencyList.containsKey(vertex)) {
-                adjacencyList.put(vertex, new HashTable<>());
+                adjacencyList.put(vertex, new HashTable<>(neighborCapacity));
+                // A vertex without edges doesn't break the symmetry of a shared reverse index
+                if (reverse != null && reverse != adjacencyList) reverse.put(vertex, new HashTable<>(neighborCapacity));
             } else {
                 alreadyPresent.add(vertex);
             }
@@ -73,15 +225,29 @@ public class ALGraph<E, W extends EdgeWeight> extends Graph<E, W> {
 
     @Override
     public Collection<E> removeAll(Collection<E> vertices) {
+        // A view of this graph would change under the loop below, so it's copied first
+        if (vertices instanceof KeyView<E>) vertices = new ArrayList<>(vertices);
+
+        // Removing a vertex with all its edges keeps a symmetric graph symmetric, so a shared index can stay shared
+        HashTable<E, HashTable<E, W>> reverse = reverseAdjacencyList();
         List<E> notPresent = new ArrayList<>();
         for (E vertex : vertices) {
-            if (adjacencyList.containsKey(vertex)) {
-                adjacencyList.remove(vertex);
-                for (HashTable<E, W> neighbors : adjacencyList.values()) {
-                    neighbors.remove(vertex);
-                }
-            } else {
+            HashTable<E, W> outgoing = adjacencyList.remove(vertex);
+            if (outgoing == null) {
                 notPresent.add(vertex);
+                continue;
+            }
+            HashTable<E, W> incoming = reverse == adjacencyList ? outgoing : reverse.remove(vertex);
+
+            incoming.forEach((from, weight) -> {
+                HashTable<E, W> edges = adjacencyList.get(from);
+                if (edges != null) edges.remove(vertex);
+            });
+            if (reverse != adjacencyList) {
+                outgoing.forEach((to, weight) -> {
+                    HashTable<E, W> edges = reverse.get(to);
+                    if (edges != null) edges.remove(vertex);
+                });
             }
         }
         return notPresent;
@@ -96,7 +262,41 @@ public class ALGraph<E, W extends EdgeWeight> extends Graph<E, W> {
         if (edges == null) {
             throw new IllegalArgumentException("Source vertex does not exist: " + from);
         }
-        return edges.remove(to);
+        W removed = edges.remove(to);
+        if (removed != null) {
+            HashTable<E, HashTable<E, W>> reverse = ownReverse();
+            if (reverse != null) reverse.get(to).remove(from);
+        }
+        return removed;
+    }
+
+    @Override
+    public void clearEdges() {
+        for (HashTable<E, W> edges : adjacencyList.values()) {
+            edges.clear();
+        }
+        HashTable<E, HashTable<E, W>> reverse = reverseAdjacencyList;
+        if (reverse != null && reverse != adjacencyList) {
+            for (HashTable<E, W> edges : reverse.values()) {
+                edges.clear();
+            }
+        }
+    }
+
+    /**
+     * Calls action with the source and weight of every edge into target, in time proportional to the number of
+     * those edges once the reverse index is built.
+     *
+     * @param target the destination vertex of the edges
+     * @param action called with (source, weight) for each edge
+     * @throws NoSuchElementException if target is not in this graph
+     */
+    public void forEachInEdge(E target, BiConsumer<? super E, ? super W> action) {
+        HashTable<E, W> incoming = reverseAdjacencyList().get(target);
+        if (incoming == null) {
+            throw new NoSuchElementException("Target vertex does not exist: " + target);
+        }
+        incoming.forEach(action);
     }
 
     @Override
@@ -118,7 +318,47 @@ public class ALGraph<E, W extends EdgeWeight> extends Graph<E, W> {
         if (neighbors == null) {
             throw new IllegalArgumentException("Source vertex does not exist: " + source);
         }
-        return neighbors.keySet();
+        return new KeyView<>(neighbors.keySet());
+    }
+
+    /**
+     * A read only wrapper around one of the tables' key sets. Removing a vertex or an edge straight from the table
+     * would skip the other side of its edges and the reverse index, so getVertices and getConnected hand these out
+     * instead. It's still live and fail-fast like the key set underneath.
+     */
+    private static final class KeyView<T> extends AbstractSet<T> {
+        private final Set<T> keys;
+
+        KeyView(Set<T> keys) {
+            this.keys = keys;
+        }
+
+        // Hides the key set's iterator so remove() gets Iterator's default, which throws
+        @Override
+        public Iterator<T> iterator() {
+            Iterator<T> iterator = keys.iterator();
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public T next() {
+                    return iterator.next();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return keys.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return keys.contains(o);
+        }
     }
 
     @Override
@@ -142,158 +382,349 @@ public class ALGraph<E, W extends EdgeWeight> extends Graph<E, W> {
 
     @Override
     public List<E> path(E from, E to) {
-        List<E> path = new ArrayList<>();
-        distance(from, to); // Side effect: populate shortestPathMap
-        E current = to;
+        return search(from, to, null, new IntIndexedDaryHeap(INITIAL_SEARCH_CAPACITY)).path();
+    }
 
-        while (current != null && !current.equals(from)) {
-            path.addFirst(current);
-            current = previous.get(current);
-        }
-        if (current != null) path.addFirst(from);
-        return path;
+    @Override
+    public EdgeWeight distance(E from, E to) {
+        return distance(from, to, new IntIndexedDaryHeap(INITIAL_SEARCH_CAPACITY));
     }
 
-    private final HashTable<E, EdgeWeight> distances = new HashTable<>();
-    private final HashTable<E, E> previous = new HashTable<>();
+    /**
+     * Dijkstra's algorithm with the given queue as the frontier, see {@link #search}.
+     *
+     * @param frontier an empty queue, it is grown as needed
+     * @return The distance between the two vertices, or infinity if no path exists
+     */
+    public EdgeWeight distance(E from, E to, IntPriorityQueue frontier) {
+        double result = search(from, to, null, frontier).distance();
+        return result == Double.POSITIVE_INFINITY ? EdgeWeight.infinity() : EdgeWeight.fromDouble(result);
+    }
 
     @Override
-    public EdgeWeight distance(E from, E to) {
-        Objects.requireNonNull(from, "Source vertex cannot be null");
-        Objects.requireNonNull(to, "Destination vertex cannot be null");
+    public List<E> pathAStar(E from, E to, Heuristic<E> heuristic) {
+        Objects.requireNonNull(heuristic, "Heuristic cannot be null");
+        return search(from, to, heuristic, new IntIndexedDaryHeap(INITIAL_SEARCH_CAPACITY)).path();
+    }
+
+    /**
+     * What one search leaves behind. discovered holds the vertices in the order the search found them, which is
+     * their dense id, and parents[id] is the id each was last reached from (-1 for the source).
+     *
+     * @param target the id of the destination, or -1 if it wasn't reached
+     */
+    private record DenseSearch<E>(List<E> discovered, int[] parents, int target, double distance) {
+        List<E> path() {
+            if (target < 0) return new ArrayList<>();
 
-        IndexedPriorityQueue<E> pq = new IndexedPriorityQueue<>(Comparator.comparing(v ->
-                distances.getOrDefault(v, EdgeWeight.infinity())));
-        distances.clear();
-        previous.clear();
+            List<E> path = new ArrayList<>();
+            for (int id = target; id >= 0; id = parents[id]) {
+                path.add(discovered.get(id));
+            }
+            Collections.reverse(path);
+            return path;
+        }
+    }
 
-        distances.put(from, EdgeWeight.zero());
-        pq.add(from);
+    /**
+     * Dijkstra's algorithm, or A* when given a heuristic. Vertices are given dense ids in the order the search
+     * discovers them, so the distances and parents live in a double[] and an int[] and the queue never has to hash
+     * a vertex or look up a distance to compare two entries. Only the id lookup for each neighbour goes through a
+     * HashTable, and no EdgeWeight is made along the way.
+     *
+     * @param heuristic a lower bound on the distance left to the destination, or null for plain Dijkstra
+     * @param frontier an empty queue, it is grown as needed
+     */
+    private DenseSearch<E> search(E from, E to, Heuristic<E> heuristic, IntPriorityQueue frontier) {
+        Objects.requireNonNull(from, "Source vertex cannot be null");
+        Objects.requireNonNull(to, "Destination vertex cannot be null");
 
-        while (!pq.isEmpty()) {
-            E current = pq.poll();
-            if (current.equals(to)) break;
+        HashTable<E, Integer> ids = new HashTable<>();
+        List<E> discovered = new ArrayList<>();
+        double[] distances = new double[INITIAL_SEARCH_CAPACITY];
+        double[] estimates = heuristic == null ? null : new double[INITIAL_SEARCH_CAPACITY];
+        int[] parents = new int[INITIAL_SEARCH_CAPACITY];
+        frontier.ensureCapacity(distances.length);
+
+        ids.put(from, 0);
+        discovered.add(from);
+        parents[0] = -1;
+        double startEstimate = heuristic == null ? 0 : heuristic.estimate(from, to);
+        // Landmarks give infinity when there's no path at all, every key would be infinite and the search would
+        // wander around the whole component in no useful order
+        if (startEstimate == Double.POSITIVE_INFINITY) {
+            SearchStats.record(0, 0);
+            return new DenseSearch<>(discovered, parents, -1, Double.POSITIVE_INFINITY);
+        }
+        if (estimates != null) estimates[0] = startEstimate;
+        frontier.add(0, startEstimate);
+        int settled = 0;
+        int relaxed = 0;
+        int target = -1;
+
+        while (!frontier.isEmpty()) {
+            int currentId = frontier.poll();
+            E current = discovered.get(currentId);
+            double currentDistance = distances[currentId];
+            settled++;
+            if (current.equals(to)) {
+                target = currentId;
+                break;
+            }
 
-            EdgeWeight currentDistance = distances.get(current);
+            HashTable<E, W> edges = adjacencyList.get(current);
+            if (edges == null) continue;
 
-            for (HashTable.Entry<E, W> edge : adjacencyList.getOrDefault(current, new HashTable<>()).entrySet()) {
+            for (HashTable.Entry<E, W> edge : edges.entrySet()) {
+                relaxed++;
                 E neighbor = edge.getKey();
-                EdgeWeight newDist = currentDistance.add(edge.getValue());
-                EdgeWeight prevDist = distances.getOrDefault(neighbor, EdgeWeight.infinity());
-
-                if (newDist.compareTo(prevDist) < 0) {
-                    distances.put(neighbor, newDist);
-                    previous.put(neighbor, current);
-                    if (pq.contains(neighbor)) {
-                        pq.decreaseKey(neighbor);
+                double newDist = currentDistance + edge.getValue().getWeight();
+
+                Integer id = ids.get(neighbor);
+                if (id == null) {
+                    double estimate = heuristic == null ? 0 : heuristic.estimate(neighbor, to);
+                    // The same for a neighbour, nothing searched from it can reach the destination
+                    if (estimate == Double.POSITIVE_INFINITY) continue;
+
+                    id = discovered.size();
+                    ids.put(neighbor, id);
+                    discovered.add(neighbor);
+                    if (id == distances.length) {
+                        distances = Arrays.copyOf(distances, id * 2);
+                        parents = Arrays.copyOf(parents, id * 2);
+                        if (estimates != null) estimates = Arrays.copyOf(estimates, id * 2);
+                        frontier.ensureCapacity(id * 2);
+                    }
+                    distances[id] = newDist;
+                    parents[id] = currentId;
+                    if (estimates != null) estimates[id] = estimate;
+                    frontier.add(id, newDist + estimate);
+                } else if (newDist < distances[id]) {
+                    distances[id] = newDist;
+                    parents[id] = currentId;
+                    double priority = estimates == null ? newDist : newDist + estimates[id];
+                    // Only a heuristic that isn't consistent can make a settled vertex shorter, it's searched again
+                    if (frontier.contains(id)) {
+                        frontier.decreaseKey(id, priority);
                     } else {
-                        pq.add(neighbor);
+                        frontier.add(id, priority);
                     }
                 }
             }
         }
 
-        return distances.getOrDefault(to, EdgeWeight.infinity());
+        SearchStats.record(settled, relaxed);
+        return new DenseSearch<>(discovered, parents, target,
+                target < 0 ? Double.POSITIVE_INFINITY : distances[target]);
     }
 
-    //coordinates is a map from vertex to [latitude, longitude]
-    public List<E> pathAStar(E from, E to, HashTable<E, double[]> coordinates) {
-        Objects.requireNonNull(from, "Source vertex cannot be null");
-        Objects.requireNonNull(to, "Destination vertex cannot be null");
-        Objects.requireNonNull(coordinates, "Coordinates map cannot be null");
+    /**
+     * Finds the shortest path by searching forwards from the source and backwards from the destination at the
+     * same time. Each search only has to reach about half way, so on a road map it settles roughly half as many
+     * vertices as {@link #path(Object, Object)}.
+     *
+     * @return the vertices on the path from source to destination, or an empty list if there is none
+     */
+    public List<E> bidirectionalPath(E from, E to) {
+        return bidirectionalSearch(from, to, null).path();
+    }
 
-        if (!coordinates.containsKey(from) || !coordinates.containsKey(to)) {
-            throw new IllegalArgumentException("Missing coordinates for source or destination vertex");
-        }
+    /**
+     * The same as {@link #distance(Object, Object)} but found with a bidirectional search.
+     */
+    public EdgeWeight bidirectionalDistance(E from, E to) {
+        double distance = bidirectionalSearch(from, to, null).distance;
+        return distance == Double.POSITIVE_INFINITY ? EdgeWeight.infinity() : EdgeWeight.fromDouble(distance);
+    }
 
-        // Calculate Haversine distance for heuristic
-        double[] destCoord = coordinates.get(to);
+    /**
+     * Bidirectional A*. The forward search is guided towards the destination and the backward search towards the
+     * source using the average of the two estimates, which keeps the search correct with the same stopping rule
+     * as bidirectional Dijkstra. The heuristic must be consistent (the landmark one is, and haversine is to within
+     * the meter each road is rounded down by).
+     *
+     * @return the vertices on the path from source to destination, or an empty list if there is none
+     */
+    public List<E> bidirectionalPathAStar(E from, E to, Heuristic<E> heuristic) {
+        Objects.requireNonNull(heuristic, "Heuristic cannot be null");
+        return bidirectionalSearch(from, to, heuristic).path();
+    }
 
-        distances.clear();
-        previous.clear();
+    /**
+     * The state of one direction of a bidirectional search, keys are the distances plus the potential of the
+     * vertex and are what the queue is ordered by.
+     */
+    private record Frontier<E>(HashTable<E, Double> distances, HashTable<E, E> previous, HashTable<E, Double> keys,
+                               IndexedPriorityQueue<E> queue) {
+        Frontier(HashTable<E, Double> keys) {
+            this(new HashTable<>(), new HashTable<>(), keys, new IndexedPriorityQueue<>(Comparator.comparing(keys::get)));
+        }
 
-        HashTable<E, EdgeWeight> fScores = new HashTable<>();
-        distances.put(from, EdgeWeight.zero());
+        Frontier() {
+            this(new HashTable<>());
+        }
 
-        // Calculate initial heuristic
-        double[] startCoord = coordinates.get(from);
-        double initialH = haversineDistance(
-                startCoord[0], startCoord[1],
-                destCoord[0], destCoord[1]
-        );
-        fScores.put(from, EdgeWeight.fromDouble(initialH));
+        void reach(E vertex, double distance, E parent, double key) {
+            distances.put(vertex, distance);
+            if (parent != null) previous.put(vertex, parent);
+            keys.put(vertex, key);
+            if (queue.contains(vertex)) {
+                queue.decreaseKey(vertex);
+            } else {
+                queue.add(vertex);
+            }
+        }
 
-        IndexedPriorityQueue<E> openSet = new IndexedPriorityQueue<>(
-                Comparator.comparing(v -> fScores.getOrDefault(v, EdgeWeight.infinity()))
-        );
-        openSet.add(from);
+        double topKey() {
+            return keys.get(queue.peek());
+        }
+    }
 
-        while (!openSet.isEmpty()) {
-            E current = openSet.poll();
+    private record BidirectionalResult<E>(double distance, E meet, Frontier<E> forward, Frontier<E> backward) {
+        List<E> path() {
+            List<E> path = new ArrayList<>();
+            if (meet == null) return path;
 
-            if (current.equals(to)) {
-                break;
+            for (E v = meet; v != null; v = forward.previous.get(v)) {
+                path.add(v);
             }
-
-            EdgeWeight gScore = distances.get(current);
-
-            for (HashTable.Entry<E, W> edge : adjacencyList.getOrDefault(current, new HashTable<>()).entrySet()) {
-                E neighbor = edge.getKey();
-                EdgeWeight tentativeGScore = gScore.add(edge.getValue());
-
-                if (tentativeGScore.compareTo(distances.getOrDefault(neighbor, EdgeWeight.infinity())) < 0) {
-                    previous.put(neighbor, current);
-                    distances.put(neighbor, tentativeGScore);
-
-                    // Calculate f-score = g-score + heuristic
-                    double[] neighborCoord = coordinates.get(neighbor);
-                    double h = haversineDistance(
-                            neighborCoord[0], neighborCoord[1],
-                            destCoord[0], destCoord[1]
-                    );
-                    fScores.put(neighbor, tentativeGScore.add(EdgeWeight.fromDouble(h)));
-
-                    if (openSet.contains(neighbor)) {
-                        openSet.decreaseKey(neighbor);
-                    } else {
-                        openSet.add(neighbor);
-                    }
-                }
+            Collections.reverse(path);
+            for (E v = backward.previous.get(meet); v != null; v = backward.previous.get(v)) {
+                path.add(v);
             }
+            return path;
         }
+    }
 
-        List<E> path = new ArrayList<>();
-        E current = to;
+    /**
+     * Alternates between the forward and backward search, always expanding whichever has the smaller key on top.
+     * Every time an edge joins the two searches the shortest connection seen so far is updated, and once the two
+     * smallest keys add up to at least that nothing shorter can be found.
+     *
+     * @param heuristic null for plain bidirectional Dijkstra
+     */
+    private BidirectionalResult<E> bidirectionalSearch(E from, E to, Heuristic<E> heuristic) {
+        Objects.requireNonNull(from, "Source vertex cannot be null");
+        Objects.requireNonNull(to, "Destination vertex cannot be null");
 
-        while (current != null && !current.equals(from)) {
-            path.addFirst(current);
-            current = previous.get(current);
+        HashTable<E, HashTable<E, W>> reverse = reverseAdjacencyList();
+        HashTable<E, W> noEdges = new HashTable<>();
+
+        // Average potential: the forward search uses p and the backward search uses -p, so the reduced edge
+        // weights are the same in both directions and stay non-negative
+        HashTable<E, Double> potentials = new HashTable<>();
+        ToDoubleFunction<E> potential = heuristic == null ? v -> 0 : v -> {
+            Double p = potentials.get(v);
+            if (p == null) {
+                p = (heuristic.estimate(v, to) - heuristic.estimate(from, v)) / 2;
+                potentials.put(v, p);
+            }
+            return p;
+        };
+
+        Frontier<E> forward = new Frontier<>();
+        Frontier<E> backward = new Frontier<>();
+        // An infinite landmark estimate means there's no path, see search()
+        double fromPotential = potential.applyAsDouble(from);
+        if (!Double.isFinite(fromPotential)) {
+            SearchStats.record(0, 0);
+            return new BidirectionalResult<>(Double.POSITIVE_INFINITY, null, forward, backward);
+        }
+        forward.reach(from, 0, null, fromPotential);
+        backward.reach(to, 0, null, -potential.applyAsDouble(to));
+
+        double best = Double.POSITIVE_INFINITY;
+        E meet = null;
+        if (from.equals(to)) {
+            best = 0;
+            meet = from;
         }
+        int settled = 0;
+        int relaxed = 0;
+
+        // Once either side runs out every vertex it can reach is settled, so the best connection is final
+        while (!forward.queue.isEmpty() && !backward.queue.isEmpty()) {
+            double forwardMin = forward.topKey();
+            double backwardMin = backward.topKey();
+            if (forwardMin + backwardMin >= best) break;
+
+            boolean isForward = forwardMin <= backwardMin;
+            Frontier<E> search = isForward ? forward : backward;
+            Frontier<E> other = isForward ? backward : forward;
+            HashTable<E, HashTable<E, W>> edges = isForward ? adjacencyList : reverse;
+
+            E current = search.queue.poll();
+            settled++;
+            double currentDistance = search.distances.get(current);
+
+            for (HashTable.Entry<E, W> edge : edges.getOrDefault(current, noEdges).entrySet()) {
+                relaxed++;
+                E neighbor = edge.getKey();
+                double newDist = currentDistance + edge.getValue().getWeight();
+
+                Double prevDist = search.distances.get(neighbor);
+                if (prevDist == null || newDist < prevDist) {
+                    double p = potential.applyAsDouble(neighbor);
+                    // Either the destination can't be reached from it or it can't be reached from the source, so
+                    // it can't be on the path
+                    if (!Double.isFinite(p)) continue;
+                    search.reach(neighbor, newDist, current, newDist + (isForward ? p : -p));
+                    prevDist = newDist;
+                }
 
-        if (current != null) {
-            path.addFirst(from);
+                Double otherDist = other.distances.get(neighbor);
+                if (otherDist != null && prevDist + otherDist < best) {
+                    best = prevDist + otherDist;
+                    meet = neighbor;
+                }
+            }
         }
 
-        return path;
+        SearchStats.record(settled, relaxed);
+        return new BidirectionalResult<>(best, meet, forward, backward);
     }
 
     /**
-     * Calculates the Haversine distance between two points on Earth
-     * @return Distance in kilometers
+     * @return for every vertex, the vertices with an edge into it and the weights of those edges
      */
-    private double haversineDistance(double lat1, double lon1, double lat2, double lon2) {
-        final int R = 6371; // Earth's radius in kilometers
-
-        lat1 = Math.toRadians(lat1);
-        lat2 = Math.toRadians(lat2);
-        double dLat = lat2 - lat1;
-        double dLon = Math.toRadians(lon2 - lon1);
+    private HashTable<E, HashTable<E, W>> reverseAdjacencyList() {
+        HashTable<E, HashTable<E, W>> reverse = reverseAdjacencyList;
+        if (reverse != null) return reverse;
+
+        synchronized (this) {
+            reverse = reverseAdjacencyList;
+            if (reverse == null) {
+                reverse = isSymmetric() ? adjacencyList : buildReverse();
+                reverseAdjacencyList = reverse;
+            }
+        }
+        return reverse;
+    }
 
-        double a = Math.sin(dLat/2) * Math.sin(dLat/2) +
-                Math.cos(lat1) * Math.cos(lat2) *
-                        Math.sin(dLon/2) * Math.sin(dLon/2);
+    /**
+     * @return true if every edge's twin going the other way has the same weight object. Twins that are only equally
+     *         long don't count, the shared index would hand out the twin's weight as the edge's own
+     */
+    private boolean isSymmetric() {
+        EdgeCursor<E, W> edges = edgeCursor();
+        while (edges.next()) {
+            W twin = adjacencyList.get(edges.to()).get(edges.from());
+            if (twin != edges.weight()) return false;
+        }
+        return true;
+    }
 
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1-a));
-        return R * c;
+    private HashTable<E, HashTable<E, W>> buildReverse() {
+        HashTable<E, HashTable<E, W>> reverse = new HashTable<>(capacityFor(adjacencyList.size()));
+        for (E vertex : adjacencyList.keySet()) {
+            reverse.put(vertex, new HashTable<>(neighborCapacity));
+        }
+        for (HashTable.Entry<E, HashTable<E, W>> entry : adjacencyList.entrySet()) {
+            E from = entry.getKey();
+            for (HashTable.Entry<E, W> edge : entry.getValue().entrySet()) {
+                reverse.get(edge.getKey()).put(from, edge.getValue());
+            }
+        }
+        return reverse;
     }
 }
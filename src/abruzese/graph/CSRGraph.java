@@ -0,0 +1,824 @@
+package abruzese.graph;
+
+import abruzese.graph.edges.EdgeWeight;
+import abruzese.hashtable.HashTable;
+import abruzese.priorityQueue.DialQueue;
+import abruzese.priorityQueue.IntIndexedMinHeap;
+import abruzese.priorityQueue.IntPriorityQueue;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * An immutable graph stored in compressed sparse row (CSR) form. Every vertex gets a dense int id, the outbound
+ * edges of vertex v are the slots offsets[v] until offsets[v + 1] of the targets/weights arrays, so pathfinding
+ * only ever touches primitive arrays instead of going through a hashtable per relaxation.
+ * <p>
+ * Built with {@link Graph#freeze()} once a graph is done being mutated (e.g. after MapBuilder loads a map). All
+ * mutating methods throw {@link UnsupportedOperationException}.
+ * <p>
+ * Searches keep their state in a {@link SearchContext} borrowed from a pool for the length of the query, so a
+ * query doesn't allocate anything beyond the returned path and any number of threads can search at once.
+ * <p>
+ * A graph made with {@link #fromArrays} only has its primitive arrays up front, vertex and edge weight objects are
+ * loaded the first time something asks for them.
+ *
+ * @param <E> The type of elements in the graph
+ * @param <W> The type of weight used for edges
+ */
+public class CSRGraph<E, W extends EdgeWeight> extends Graph<E, W> {
+    private final Object[] vertices; // null slots haven't been loaded yet
+    private final IntFunction<E> vertexLoader;
+    private final ToIntFunction<E> indexer;
+    private final int[] offsets;
+    private final int[] targets;
+    private final double[] weights;
+    private final Object[] edgeWeights; // null slots haven't been loaded yet
+    private final IntFunction<W> edgeWeightLoader;
+    private final int maxIntegerWeight; // -1 if some weight isn't a whole number
+    private final transient SearchContextPool contexts;
+
+    private CSRGraph(Object[] vertices, IntFunction<E> vertexLoader, ToIntFunction<E> indexer, int[] offsets,
+                     int[] targets, double[] weights, Object[] edgeWeights, IntFunction<W> edgeWeightLoader) {
+        this.vertices = vertices;
+        this.vertexLoader = vertexLoader;
+        this.indexer = indexer;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.edgeWeights = edgeWeights;
+        this.edgeWeightLoader = edgeWeightLoader;
+        this.maxIntegerWeight = maxIntegerWeight(weights);
+        this.contexts = new SearchContextPool(vertices.length);
+    }
+
+    private static int maxIntegerWeight(double[] weights) {
+        int max = 0;
+        for (double weight : weights) {
+            if (weight < 0 || weight != Math.rint(weight) || weight > Integer.MAX_VALUE - 1) return -1;
+            max = Math.max(max, (int) weight);
+        }
+        return max;
+    }
+
+    /**
+     * Copies the vertices and edges of a graph into a new CSRGraph. Later changes to the source graph are not
+     * reflected in the result.
+     *
+     * @param graph the graph to freeze
+     * @return an immutable CSR copy of graph
+     */
+    public static <E, W extends EdgeWeight> CSRGraph<E, W> of(Graph<E, W> graph) {
+        if (graph instanceof CSRGraph<E, W> csr) return csr;
+
+        Object[] vertices = graph.getVertices().toArray();
+        int n = vertices.length;
+        HashTable<E, Integer> indices = new HashTable<>(tableCapacity(n));
+        for (int i = 0; i < n; i++) {
+            indices.put(vertexOf(vertices, i), i);
+        }
+
+        // First pass counts the out degree of every vertex so the edge arrays can be sized exactly
+        int[] offsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            int slot = i + 1;
+            graph.forEachOutEdge(vertexOf(vertices, i), (to, weight) -> offsets[slot]++);
+            offsets[slot] += offsets[i];
+        }
+
+        // Second pass fills the edges in, next[0] is the slot the next edge goes in
+        int[] targets = new int[offsets[n]];
+        double[] weights = new double[offsets[n]];
+        Object[] edgeWeights = new Object[offsets[n]];
+        int[] next = new int[1];
+        for (int i = 0; i < n; i++) {
+            graph.forEachOutEdge(vertexOf(vertices, i), (to, weight) -> {
+                int e = next[0]++;
+                targets[e] = indices.get(to);
+                weights[e] = weight.getWeight();
+                edgeWeights[e] = weight;
+            });
+        }
+
+        ToIntFunction<E> indexer = vertex -> {
+            Integer index = indices.get(vertex);
+            return index == null ? -1 : index;
+        };
+        return new CSRGraph<>(vertices, null, indexer, offsets, targets, weights, edgeWeights, null);
+    }
+
+    /**
+     * Wraps CSR arrays that were stored somewhere else already, like a {@link abruzese.util.MapImage}. The arrays
+     * are used as is, not copied. Vertices and edge weights are only made by the loaders the first time they're
+     * needed, so a loader can be called more than once for the same id by racing threads and has to give back equal
+     * objects every time.
+     *
+     * @param offsets    the edges of vertex v are the slots offsets[v] until offsets[v + 1]
+     * @param targets    the destination vertex id of each edge slot
+     * @param weights    the weight of each edge slot
+     * @param vertexAt   makes the vertex with a given id
+     * @param indexOf    finds the id of a vertex, or -1 if it isn't in the graph
+     * @param edgeWeightAt makes the weight object of a given edge slot
+     */
+    public static <E, W extends EdgeWeight> CSRGraph<E, W> fromArrays(int[] offsets, int[] targets, double[] weights,
+                                                                      IntFunction<E> vertexAt, ToIntFunction<E> indexOf,
+                                                                      IntFunction<W> edgeWeightAt) {
+        Objects.requireNonNull(vertexAt, "Vertex loader cannot be null");
+        Objects.requireNonNull(indexOf, "Indexer cannot be null");
+        Objects.requireNonNull(edgeWeightAt, "Edge weight loader cannot be null");
+        if (offsets.length == 0 || offsets[0] != 0 || offsets[offsets.length - 1] != targets.length
+                || weights.length != targets.length) {
+            throw new IllegalArgumentException("Offsets, targets and weights don't describe the same edges");
+        }
+
+        int n = offsets.length - 1;
+        return new CSRGraph<>(new Object[n], vertexAt, indexOf, offsets, targets, weights,
+                new Object[targets.length], edgeWeightAt);
+    }
+
+    /**
+     * @return a power of two capacity that keeps a table of n entries under the load factor
+     */
+    private static int tableCapacity(int n) {
+        return Integer.highestOneBit(Math.max(16, (int) (n / 0.75f) + 1) - 1) << 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> E vertexOf(Object[] vertices, int index) {
+        return (E) vertices[index];
+    }
+
+    // Primitive accessors, these are what the search code in this class runs on
+
+    /**
+     * @return the dense id of vertex, or -1 if it isn't in this graph
+     */
+    public int indexOf(E vertex) {
+        return indexer.applyAsInt(vertex);
+    }
+
+    /**
+     * @return the dense ids of the given vertices, in order
+     * @throws IllegalArgumentException if one of them isn't in this graph
+     */
+    int[] indicesOf(List<E> vertices) {
+        int[] ids = new int[vertices.size()];
+        for (int i = 0; i < ids.length; i++) {
+            E vertex = Objects.requireNonNull(vertices.get(i), "Vertex cannot be null");
+            ids[i] = indexOf(vertex);
+            if (ids[i] < 0) throw new IllegalArgumentException("Vertex does not exist: " + vertex);
+        }
+        return ids;
+    }
+
+    /**
+     * @return the vertex with the given dense id
+     */
+    @SuppressWarnings("unchecked")
+    public E vertexAt(int index) {
+        Object vertex = vertices[index];
+        if (vertex == null) {
+            // Two threads can both load it, that's fine since the loader gives back equal vertices
+            vertex = vertexLoader.apply(index);
+            vertices[index] = vertex;
+        }
+        return (E) vertex;
+    }
+
+    public int vertexCount() {
+        return vertices.length;
+    }
+
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * @return the first edge slot of vertex v
+     */
+    public int outStart(int v) {
+        return offsets[v];
+    }
+
+    /**
+     * @return one past the last edge slot of vertex v
+     */
+    public int outEnd(int v) {
+        return offsets[v + 1];
+    }
+
+    /**
+     * @return the destination vertex id of edge slot e
+     */
+    public int target(int e) {
+        return targets[e];
+    }
+
+    /**
+     * @return the weight of edge slot e as a primitive
+     */
+    public double weight(int e) {
+        return weights[e];
+    }
+
+    /**
+     * @return the original weight object of edge slot e
+     */
+    @SuppressWarnings("unchecked")
+    public W edgeWeight(int e) {
+        Object weight = edgeWeights[e];
+        if (weight == null) {
+            weight = edgeWeightLoader.apply(e);
+            edgeWeights[e] = weight;
+        }
+        return (W) weight;
+    }
+
+    /**
+     * @return the edge slot from u to v, or -1 if no such edge exists
+     */
+    public int edgeIndex(int u, int v) {
+        for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+            if (targets[e] == v) return e;
+        }
+        return -1;
+    }
+
+    private int requireIndex(E vertex, String role) {
+        int index = indexOf(vertex);
+        if (index < 0) {
+            throw new NoSuchElementException(role + " vertex does not exist: " + vertex);
+        }
+        return index;
+    }
+
+    // Graph API
+
+    @Override
+    public int size() {
+        return vertices.length;
+    }
+
+    @Override
+    public W get(E from, E to) {
+        Objects.requireNonNull(from, "Source vertex cannot be null");
+        Objects.requireNonNull(to, "Destination vertex cannot be null");
+
+        int u = requireIndex(from, "Source");
+        int v = indexOf(to);
+        if (v < 0) return null;
+        int e = edgeIndex(u, v);
+        return e < 0 ? null : edgeWeight(e);
+    }
+
+    @Override
+    public W set(E from, E to, W weight) {
+        throw new UnsupportedOperationException("CSRGraph is immutable");
+    }
+
+    @Override
+    public Set<E> getVertices() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<E> iterator() {
+                return new Iterator<>() {
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < vertices.length;
+                    }
+
+                    @Override
+                    public E next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        return vertexAt(next++);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return vertices.length;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public boolean contains(Object o) {
+                return o != null && indexOf((E) o) >= 0;
+            }
+        };
+    }
+
+    @Override
+    public Set<HashTable.Entry<E, E>> getEdges() {
+        Set<HashTable.Entry<E, E>> edges = new HashSet<>();
+        for (int u = 0; u < vertices.length; u++) {
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                edges.add(new HashTable.Entry<>(vertexAt(u), vertexAt(targets[e])));
+            }
+        }
+        return edges;
+    }
+
+    @Override
+    public EdgeCursor<E, W> edgeCursor() {
+        return new EdgeCursor<>() {
+            private int u = 0;
+            private int e = -1;
+
+            @Override
+            public boolean next() {
+                if (++e >= targets.length) {
+                    e = targets.length;
+                    return false;
+                }
+                while (offsets[u + 1] <= e) u++;
+                return true;
+            }
+
+            @Override
+            public E from() {
+                return vertexAt(u);
+            }
+
+            @Override
+            public E to() {
+                return vertexAt(targets[e]);
+            }
+
+            @Override
+            public W weight() {
+                return edgeWeight(e);
+            }
+
+            @Override
+            public double weightValue() {
+                return weights[e];
+            }
+        };
+    }
+
+    @Override
+    public void forEachOutEdge(E source, BiConsumer<? super E, ? super W> action) {
+        int u = indexOf(source);
+        if (u < 0) {
+            throw new NoSuchElementException("Source vertex does not exist: " + source);
+        }
+        for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+            action.accept(vertexAt(targets[e]), edgeWeight(e));
+        }
+    }
+
+    @Override
+    public Collection<E> addAll(Collection<E> vertices) {
+        throw new UnsupportedOperationException("CSRGraph is immutable");
+    }
+
+    @Override
+    public Collection<E> removeAll(Collection<E> vertices) {
+        throw new UnsupportedOperationException("CSRGraph is immutable");
+    }
+
+    @Override
+    public W removeEdge(E from, E to) {
+        throw new UnsupportedOperationException("CSRGraph is immutable");
+    }
+
+    @Override
+    public boolean contains(E vertex) {
+        return indexOf(vertex) >= 0;
+    }
+
+    @Override
+    public Collection<E> neighbors(E source) {
+        return getConnected(source);
+    }
+
+    @Override
+    public int countEdgesBetween(E v1, E v2) {
+        int u = indexOf(v1);
+        int v = indexOf(v2);
+        if (u < 0 || v < 0) return 0;
+        int count = 0;
+        if (edgeIndex(u, v) >= 0) count++;
+        if (edgeIndex(v, u) >= 0) count++;
+        return count;
+    }
+
+    @Override
+    public Collection<E> getConnected(E source) {
+        int u = indexOf(source);
+        if (u < 0) {
+            throw new IllegalArgumentException("Source vertex does not exist: " + source);
+        }
+        List<E> connected = new ArrayList<>(offsets[u + 1] - offsets[u]);
+        for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+            connected.add(vertexAt(targets[e]));
+        }
+        return connected;
+    }
+
+    @Override
+    public Graph<E, W> copy() {
+        return this; // immutable, so sharing is the same as copying
+    }
+
+    @Override
+    public Graph<E, W> subgraph(Collection<E> vertices) {
+        ALGraph<E, W> subgraph = new ALGraph<>();
+        for (E vertex : vertices) {
+            if (!contains(vertex)) {
+                throw new IllegalArgumentException("Vertex does not exist: " + vertex);
+            }
+            subgraph.add(vertex);
+        }
+        for (E from : vertices) {
+            int u = indexOf(from);
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                E to = vertexAt(targets[e]);
+                if (vertices.contains(to)) {
+                    subgraph.set(from, to, edgeWeight(e));
+                }
+            }
+        }
+        return subgraph.freeze();
+    }
+
+    @Override
+    public CSRGraph<E, W> freeze() {
+        return this;
+    }
+
+    /**
+     * @return a graph with the same vertex ids as this one where every edge points the other way
+     */
+    public CSRGraph<E, W> reverse() {
+        int n = vertices.length;
+        int[] reverseOffsets = new int[n + 1];
+        for (int target : targets) {
+            reverseOffsets[target + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            reverseOffsets[v + 1] += reverseOffsets[v];
+        }
+
+        int[] next = Arrays.copyOf(reverseOffsets, n);
+        int[] reverseTargets = new int[targets.length];
+        double[] reverseWeights = new double[targets.length];
+        Object[] reverseEdgeWeights = new Object[targets.length];
+        for (int u = 0; u < n; u++) {
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                int slot = next[targets[e]]++;
+                reverseTargets[slot] = u;
+                reverseWeights[slot] = weights[e];
+                reverseEdgeWeights[slot] = edgeWeight(e);
+            }
+        }
+
+        return new CSRGraph<>(vertices, vertexLoader, indexer, reverseOffsets, reverseTargets, reverseWeights,
+                reverseEdgeWeights, null);
+    }
+
+    // Pathfinding
+
+    /**
+     * Borrows a search context sized for this graph. Hand it back with {@link #releaseContext(SearchContext)} once
+     * done with it.
+     */
+    public SearchContext acquireContext() {
+        return contexts.acquire();
+    }
+
+    public void releaseContext(SearchContext context) {
+        contexts.release(context);
+    }
+
+    @Override
+    public List<E> path(E from, E to) {
+        Objects.requireNonNull(from, "Source vertex cannot be null");
+        Objects.requireNonNull(to, "Destination vertex cannot be null");
+
+        int s = indexOf(from);
+        int t = indexOf(to);
+        if (s < 0 || t < 0) return new ArrayList<>();
+
+        SearchContext context = acquireContext();
+        try {
+            dijkstra(s, t, context);
+            return buildPath(t, context);
+        } finally {
+            releaseContext(context);
+        }
+    }
+
+    @Override
+    public EdgeWeight distance(E from, E to) {
+        Objects.requireNonNull(from, "Source vertex cannot be null");
+        Objects.requireNonNull(to, "Destination vertex cannot be null");
+
+        int s = indexOf(from);
+        int t = indexOf(to);
+        if (s < 0 || t < 0) return EdgeWeight.infinity();
+
+        SearchContext context = acquireContext();
+        double distance;
+        try {
+            distance = dijkstra(s, t, context);
+        } finally {
+            releaseContext(context);
+        }
+        return distance == Double.POSITIVE_INFINITY ? EdgeWeight.infinity() : EdgeWeight.fromDouble(distance);
+    }
+
+    /**
+     * @return the largest edge weight if every weight is a non negative whole number, otherwise -1
+     */
+    public int getMaxIntegerWeight() {
+        return maxIntegerWeight;
+    }
+
+    /**
+     * Finds the shortest path with Dial's algorithm, Dijkstra's algorithm with a {@link DialQueue} of buckets as
+     * the frontier instead of a heap. Only works when every edge weight is a whole number, like the whole metre
+     * roads MapBuilder makes.
+     *
+     * @throws IllegalStateException if some edge weight isn't a non negative whole number
+     */
+    public List<E> pathDial(E from, E to) {
+        Objects.requireNonNull(from, "Source vertex cannot be null");
+        Objects.requireNonNull(to, "Destination vertex cannot be null");
+        if (maxIntegerWeight < 0) {
+            throw new IllegalStateException("Dial's algorithm needs whole number edge weights");
+        }
+
+        int s = indexOf(from);
+        int t = indexOf(to);
+        if (s < 0 || t < 0) return new ArrayList<>();
+
+        SearchContext context = acquireContext();
+        try {
+            dijkstra(s, t, context, context.bucketQueue(maxIntegerWeight));
+            return buildPath(t, context);
+        } finally {
+            releaseContext(context);
+        }
+    }
+
+    /**
+     * Rows are computed in parallel on the common ForkJoinPool, each with its own search context.
+     */
+    @Override
+    public double[][] distanceMatrix(List<E> sources, List<E> targets) {
+        int[] s = indicesOf(sources);
+        int[] t = indicesOf(targets);
+
+        // Shared between the rows and only read by them
+        boolean[] isTarget = new boolean[vertexCount()];
+        int distinctTargets = 0;
+        for (int target : t) {
+            if (!isTarget[target]) {
+                isTarget[target] = true;
+                distinctTargets++;
+            }
+        }
+        int remaining = distinctTargets;
+
+        double[][] matrix = new double[s.length][];
+        IntStream rows = IntStream.range(0, s.length);
+        if (s.length > 1) rows = rows.parallel();
+        rows.forEach(i -> {
+            SearchContext context = acquireContext();
+            try {
+                oneToMany(s[i], isTarget, remaining, context);
+                double[] row = new double[t.length];
+                for (int j = 0; j < t.length; j++) {
+                    row[j] = context.dist(t[j]);
+                }
+                matrix[i] = row;
+            } finally {
+                releaseContext(context);
+            }
+        });
+        return matrix;
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from s until every vertex marked in isTarget is settled (or everything reachable
+     * is), leaving the distances in context.
+     *
+     * @param targetCount the number of vertices marked in isTarget
+     */
+    public void oneToMany(int s, boolean[] isTarget, int targetCount, SearchContext context) {
+        IntIndexedMinHeap pq = context.heap();
+        context.update(s, 0, -1);
+        pq.add(s, 0);
+        int remaining = targetCount;
+        int settled = 0;
+        int relaxed = 0;
+
+        while (!pq.isEmpty() && remaining > 0) {
+            int current = pq.poll();
+            settled++;
+            if (isTarget[current] && --remaining == 0) break;
+
+            double currentDistance = context.dist(current);
+            relaxed += offsets[current + 1] - offsets[current];
+            for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                int neighbor = targets[e];
+                double newDist = currentDistance + weights[e];
+                if (newDist < context.dist(neighbor)) {
+                    context.update(neighbor, newDist, current);
+                    pq.addOrDecrease(neighbor, newDist);
+                }
+            }
+        }
+
+        SearchStats.record(settled, relaxed);
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from s until t is settled. The context is left holding the distances and parents
+     * of every vertex reached so the path can be read back out of it.
+     *
+     * @param t the vertex to stop at, or -1 to search the whole graph
+     * @return the distance from s to t, or infinity if t can't be reached (0 if t is -1)
+     */
+    public double dijkstra(int s, int t, SearchContext context) {
+        return dijkstra(s, t, context, context.heap());
+    }
+
+    /**
+     * The same as {@link #dijkstra(int, int, SearchContext)} with a different queue as the frontier.
+     *
+     * @param pq an empty queue that can hold every vertex id
+     */
+    public double dijkstra(int s, int t, SearchContext context, IntPriorityQueue pq) {
+        context.update(s, 0, -1);
+        pq.add(s, 0);
+        int settled = 0;
+        int relaxed = 0;
+
+        while (!pq.isEmpty()) {
+            int current = pq.poll();
+            settled++;
+            if (current == t) break;
+
+            double currentDistance = context.dist(current);
+            relaxed += offsets[current + 1] - offsets[current];
+            for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                int neighbor = targets[e];
+                double newDist = currentDistance + weights[e];
+                if (newDist < context.dist(neighbor)) {
+                    context.update(neighbor, newDist, current);
+                    pq.addOrDecrease(neighbor, newDist);
+                }
+            }
+        }
+
+        SearchStats.record(settled, relaxed);
+        return t < 0 ? 0 : context.dist(t);
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from several vertices at once, each already sourceDistances[i] along, until it's sure
+     * which end gives the shortest total once its endDistances[j] is added on. This is how a route between two
+     * points partway along roads is found, the points' distances to the ends of their roads are the extra
+     * distances. The context is left holding the parents to read the path back out with, the sources have no parent.
+     *
+     * @return the index into ends of the closest one, or -1 if none can be reached
+     */
+    public int dijkstra(int[] sources, double[] sourceDistances, int[] ends, double[] endDistances,
+                        SearchContext context) {
+        IntIndexedMinHeap pq = context.heap();
+        for (int i = 0; i < sources.length; i++) {
+            if (sourceDistances[i] < context.dist(sources[i])) {
+                context.update(sources[i], sourceDistances[i], -1);
+                pq.addOrDecrease(sources[i], sourceDistances[i]);
+            }
+        }
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        int settled = 0;
+        int relaxed = 0;
+
+        while (!pq.isEmpty()) {
+            int current = pq.poll();
+            settled++;
+            double currentDistance = context.dist(current);
+            // Nothing settled from here on can beat the best end found so far
+            if (currentDistance >= bestDistance) break;
+            for (int j = 0; j < ends.length; j++) {
+                if (ends[j] == current && currentDistance + endDistances[j] < bestDistance) {
+                    best = j;
+                    bestDistance = currentDistance + endDistances[j];
+                }
+            }
+
+            relaxed += offsets[current + 1] - offsets[current];
+            for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                int neighbor = targets[e];
+                double newDist = currentDistance + weights[e];
+                if (newDist < context.dist(neighbor)) {
+                    context.update(neighbor, newDist, current);
+                    pq.addOrDecrease(neighbor, newDist);
+                }
+            }
+        }
+
+        SearchStats.record(settled, relaxed);
+        return best;
+    }
+
+    /**
+     * Walks the parents recorded in context back from t.
+     *
+     * @return the path ending at t, empty if t wasn't reached
+     */
+    public List<E> buildPath(int t, SearchContext context) {
+        if (!context.reached(t)) return new ArrayList<>();
+
+        List<E> path = new ArrayList<>();
+        for (int v = t; v >= 0; v = context.parent(v)) {
+            path.add(vertexAt(v));
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    @Override
+    public List<E> pathAStar(E from, E to, Heuristic<E> heuristic) {
+        Objects.requireNonNull(from, "Source vertex cannot be null");
+        Objects.requireNonNull(to, "Destination vertex cannot be null");
+        Objects.requireNonNull(heuristic, "Heuristic cannot be null");
+
+        int s = indexOf(from);
+        int t = indexOf(to);
+        if (s < 0 || t < 0) return new ArrayList<>();
+
+        // Landmarks built over this graph can be read by id directly instead of going through the vertices
+        IntToDoubleFunction estimate = heuristic instanceof LandmarkHeuristic<E> landmarks && landmarks.getGraph() == this
+                ? v -> landmarks.estimate(v, t)
+                : v -> heuristic.estimate(vertexAt(v), to);
+
+        SearchContext context = acquireContext();
+        try {
+            aStar(s, t, estimate, context);
+            return buildPath(t, context);
+        } finally {
+            releaseContext(context);
+        }
+    }
+
+    /**
+     * Runs A* from s until t is settled, the context is left holding the distances and parents of every vertex
+     * reached.
+     *
+     * @param heuristic a lower bound on the distance from a vertex id to t
+     * @return the distance from s to t, or infinity if t can't be reached
+     */
+    public double aStar(int s, int t, IntToDoubleFunction heuristic, SearchContext context) {
+        IntIndexedMinHeap openSet = context.heap();
+        double startEstimate = heuristic.applyAsDouble(s);
+        // Landmarks give infinity when there's no path at all, every key would be infinite and the search would
+        // wander around the whole component in no useful order
+        if (startEstimate == Double.POSITIVE_INFINITY) {
+            SearchStats.record(0, 0);
+            return Double.POSITIVE_INFINITY;
+        }
+        context.update(s, 0, -1);
+        openSet.add(s, startEstimate);
+        int settled = 0;
+        int relaxed = 0;
+
+        while (!openSet.isEmpty()) {
+            int current = openSet.poll();
+            settled++;
+            if (current == t) break;
+
+            double gScore = context.dist(current);
+            relaxed += offsets[current + 1] - offsets[current];
+            for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                int neighbor = targets[e];
+                double tentativeGScore = gScore + weights[e];
+
+                if (tentativeGScore < context.dist(neighbor)) {
+                    double estimate = heuristic.applyAsDouble(neighbor);
+                    // The same for a neighbour, nothing searched from it can reach t
+                    if (estimate == Double.POSITIVE_INFINITY) continue;
+
+                    context.update(neighbor, tentativeGScore, current);
+                    // f-score = g-score + heuristic
+                    openSet.addOrDecrease(neighbor, tentativeGScore + estimate);
+                }
+            }
+        }
+
+        SearchStats.record(settled, relaxed);
+        return context.dist(t);
+    }
+}
@@ -0,0 +1,668 @@
+package abruzese.graph;
+
+import abruzese.graph.edges.EdgeWeight;
+import abruzese.priorityQueue.IntIndexedMinHeap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+/**
+ * A Contraction Hierarchy over a {@link CSRGraph} for fast point to point shortest path queries.
+ * <p>
+ * Preprocessing contracts the vertices one at a time, cheapest first by edge difference (shortcuts added minus
+ * edges removed, plus the number of already contracted neighbours and the hierarchy depth to spread contraction
+ * out). Contracting v adds a
+ * shortcut u -> w for every pair of neighbours whose only shortest path runs through v. Each shortcut remembers
+ * the vertex it skips, so it can be unpacked back into the original edges (and so the original Roads).
+ * <p>
+ * A query runs Dijkstra from both ends that only ever moves up to higher ranked vertices. The two searches meet at
+ * the highest ranked vertex of the shortest path, and they only settle a few hundred vertices even on large maps.
+ * <p>
+ * Distance matrices use the bucket based many-to-many algorithm: one backward upward search per target leaves
+ * (target, distance) entries in a bucket at every vertex it settles, then one forward upward search per source
+ * scans the buckets of the vertices it settles. That is S + T small searches rather than S * T queries.
+ * <p>
+ * Immutable once built, queries may run concurrently.
+ *
+ * @param <E> The type of elements in the graph
+ * @param <W> The type of weight used for edges
+ */
+public class ContractionHierarchy<E, W extends EdgeWeight> {
+    // Witness searches are cut off after this many settled vertices, missing a witness only costs an extra shortcut.
+    // Priorities are estimated with a cheaper search than the one used when actually contracting.
+    private static final int SIMULATE_SETTLE_LIMIT = 50;
+    private static final int CONTRACT_SETTLE_LIMIT = 500;
+
+    private final CSRGraph<E, W> graph;
+    private final int[] rank;
+
+    // Upward edges v -> x with rank[x] > rank[v], grouped by v
+    private final int[] upOffsets;
+    private final int[] upTargets;
+    private final double[] upWeights;
+    private final int[] upMiddle; // the contracted vertex a shortcut skips, -1 for original edges
+
+    // Downward edges x -> v with rank[x] > rank[v], grouped by v (so stored reversed)
+    private final int[] downOffsets;
+    private final int[] downSources;
+    private final double[] downWeights;
+    private final int[] downMiddle;
+
+    private final SearchContextPool contexts;
+
+    private ContractionHierarchy(CSRGraph<E, W> graph, int[] rank, Adjacency[] up, Adjacency[] down) {
+        this.graph = graph;
+        this.rank = rank;
+
+        int n = rank.length;
+        this.upOffsets = new int[n + 1];
+        this.downOffsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            upOffsets[v + 1] = upOffsets[v] + up[v].size;
+            downOffsets[v + 1] = downOffsets[v] + down[v].size;
+        }
+
+        this.upTargets = new int[upOffsets[n]];
+        this.upWeights = new double[upOffsets[n]];
+        this.upMiddle = new int[upOffsets[n]];
+        this.downSources = new int[downOffsets[n]];
+        this.downWeights = new double[downOffsets[n]];
+        this.downMiddle = new int[downOffsets[n]];
+        for (int v = 0; v < n; v++) {
+            up[v].copyTo(upOffsets[v], upTargets, upWeights, upMiddle);
+            down[v].copyTo(downOffsets[v], downSources, downWeights, downMiddle);
+        }
+
+        this.contexts = new SearchContextPool(n);
+    }
+
+    /**
+     * Contracts every vertex of graph. This takes a while on large maps, build it once and keep it around.
+     */
+    public static <E, W extends EdgeWeight> ContractionHierarchy<E, W> build(CSRGraph<E, W> graph) {
+        Contractor contractor = new Contractor(graph);
+        contractor.contractAll();
+        return new ContractionHierarchy<>(graph, contractor.rank, contractor.out, contractor.in);
+    }
+
+    public CSRGraph<E, W> getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return the number of upward plus downward edges, shortcuts included
+     */
+    public int edgeCount() {
+        return upTargets.length + downSources.length;
+    }
+
+    /**
+     * Finds the shortest path between two vertices.
+     *
+     * @return A list of vertices representing the shortest path between the
+     *         two vertices. Empty list if no path exists
+     */
+    public List<E> path(E from, E to) {
+        Objects.requireNonNull(from, "Source vertex cannot be null");
+        Objects.requireNonNull(to, "Destination vertex cannot be null");
+
+        int s = graph.indexOf(from);
+        int t = graph.indexOf(to);
+        if (s < 0 || t < 0) return new ArrayList<>();
+
+        SearchContext forward = contexts.acquire();
+        SearchContext backward = contexts.acquire();
+        try {
+            int meet = query(s, t, forward, backward);
+            if (meet < 0) return new ArrayList<>();
+            return unpackPath(meet, forward, backward);
+        } finally {
+            contexts.release(forward);
+            contexts.release(backward);
+        }
+    }
+
+    /**
+     * Finds the shortest distance between two vertices.
+     *
+     * @return The distance between the two vertices, or infinity if no path exists
+     */
+    public EdgeWeight distance(E from, E to) {
+        Objects.requireNonNull(from, "Source vertex cannot be null");
+        Objects.requireNonNull(to, "Destination vertex cannot be null");
+
+        int s = graph.indexOf(from);
+        int t = graph.indexOf(to);
+        if (s < 0 || t < 0) return EdgeWeight.infinity();
+
+        SearchContext forward = contexts.acquire();
+        SearchContext backward = contexts.acquire();
+        try {
+            int meet = query(s, t, forward, backward);
+            if (meet < 0) return EdgeWeight.infinity();
+            return EdgeWeight.fromDouble(forward.dist(meet) + backward.dist(meet));
+        } finally {
+            contexts.release(forward);
+            contexts.release(backward);
+        }
+    }
+
+    /**
+     * Finds the shortest distance from every source to every target with the bucket based many-to-many algorithm.
+     * Both the target and the source searches run in parallel on the common ForkJoinPool.
+     *
+     * @return matrix[i][j] is the distance from sources.get(i) to targets.get(j), or
+     *         Double.POSITIVE_INFINITY if no path exists
+     * @throws IllegalArgumentException if a source or target isn't in the graph
+     */
+    public double[][] distanceMatrix(List<E> sources, List<E> targets) {
+        int[] s = graph.indicesOf(sources);
+        int[] t = graph.indicesOf(targets);
+        int n = rank.length;
+
+        // Backward searches, remembering what every target's search settled
+        int[][] reached = new int[t.length][];
+        double[][] reachedDistances = new double[t.length][];
+        parallelRange(t.length).forEach(j -> {
+            SearchContext backward = contexts.acquire();
+            try {
+                IntStack settled = upwardSearch(t[j], false, backward);
+                reached[j] = new int[settled.size()];
+                reachedDistances[j] = new double[settled.size()];
+                for (int k = 0; k < settled.size(); k++) {
+                    reached[j][k] = settled.get(k);
+                    reachedDistances[j][k] = backward.dist(settled.get(k));
+                }
+            } finally {
+                contexts.release(backward);
+            }
+        });
+
+        // Lay the buckets out like the edges, grouped by vertex
+        int[] bucketOffsets = new int[n + 1];
+        for (int[] vertices : reached) {
+            for (int v : vertices) bucketOffsets[v + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            bucketOffsets[v + 1] += bucketOffsets[v];
+        }
+        int[] bucketTargets = new int[bucketOffsets[n]];
+        double[] bucketDistances = new double[bucketOffsets[n]];
+        int[] next = Arrays.copyOf(bucketOffsets, n);
+        for (int j = 0; j < t.length; j++) {
+            for (int k = 0; k < reached[j].length; k++) {
+                int b = next[reached[j][k]]++;
+                bucketTargets[b] = j;
+                bucketDistances[b] = reachedDistances[j][k];
+            }
+        }
+
+        // Forward searches, every settled vertex's bucket gives a candidate distance to its targets
+        double[][] matrix = new double[s.length][];
+        parallelRange(s.length).forEach(i -> {
+            double[] row = new double[t.length];
+            Arrays.fill(row, Double.POSITIVE_INFINITY);
+            SearchContext forward = contexts.acquire();
+            try {
+                IntStack settled = upwardSearch(s[i], true, forward);
+                for (int k = 0; k < settled.size(); k++) {
+                    int u = settled.get(k);
+                    double du = forward.dist(u);
+                    for (int b = bucketOffsets[u]; b < bucketOffsets[u + 1]; b++) {
+                        double dist = du + bucketDistances[b];
+                        if (dist < row[bucketTargets[b]]) row[bucketTargets[b]] = dist;
+                    }
+                }
+            } finally {
+                contexts.release(forward);
+            }
+            matrix[i] = row;
+        });
+        return matrix;
+    }
+
+    private static IntStream parallelRange(int size) {
+        IntStream range = IntStream.range(0, size);
+        return size > 1 ? range.parallel() : range;
+    }
+
+    /**
+     * Runs one full upward search from start, forward along the upward edges or backward along the downward ones.
+     *
+     * @return the vertices it settled that weren't stalled, their distances are left in search
+     */
+    private IntStack upwardSearch(int start, boolean isForward, SearchContext search) {
+        IntIndexedMinHeap queue = search.heap();
+        search.update(start, 0, -1);
+        queue.add(start, 0);
+
+        IntStack settled = new IntStack();
+        while (!queue.isEmpty()) {
+            int u = queue.poll();
+            double du = search.dist(u);
+            if (isForward) {
+                if (isStalled(u, du, search, downOffsets, downSources, downWeights)) continue;
+                relax(u, du, search, upOffsets, upTargets, upWeights);
+            } else {
+                if (isStalled(u, du, search, upOffsets, upTargets, upWeights)) continue;
+                relax(u, du, search, downOffsets, downSources, downWeights);
+            }
+            settled.push(u);
+        }
+        return settled;
+    }
+
+    /**
+     * Runs the bidirectional upward search between the dense ids s and t.
+     *
+     * @return the vertex the shortest path passes through at its highest rank, or -1 if t can't be reached
+     */
+    public int query(int s, int t, SearchContext forward, SearchContext backward) {
+        IntIndexedMinHeap forwardQueue = forward.heap();
+        IntIndexedMinHeap backwardQueue = backward.heap();
+        forward.update(s, 0, -1);
+        forwardQueue.add(s, 0);
+        backward.update(t, 0, -1);
+        backwardQueue.add(t, 0);
+
+        double best = Double.POSITIVE_INFINITY;
+        int meet = -1;
+        int settled = 0;
+        int relaxed = 0;
+
+        while (!forwardQueue.isEmpty() || !backwardQueue.isEmpty()) {
+            double forwardMin = forwardQueue.isEmpty() ? Double.POSITIVE_INFINITY : forwardQueue.peekPriority();
+            double backwardMin = backwardQueue.isEmpty() ? Double.POSITIVE_INFINITY : backwardQueue.peekPriority();
+            // Neither search can find anything shorter than what we already have
+            if (Math.min(forwardMin, backwardMin) >= best) break;
+
+            boolean isForward = forwardMin <= backwardMin;
+            SearchContext search = isForward ? forward : backward;
+            SearchContext other = isForward ? backward : forward;
+            int u = search.heap().poll();
+            double du = search.dist(u);
+            settled++;
+
+            if (other.reached(u) && du + other.dist(u) < best) {
+                best = du + other.dist(u);
+                meet = u;
+            }
+
+            if (isForward) {
+                if (isStalled(u, du, search, downOffsets, downSources, downWeights)) continue;
+                relax(u, du, search, upOffsets, upTargets, upWeights);
+                relaxed += upOffsets[u + 1] - upOffsets[u];
+            } else {
+                if (isStalled(u, du, search, upOffsets, upTargets, upWeights)) continue;
+                relax(u, du, search, downOffsets, downSources, downWeights);
+                relaxed += downOffsets[u + 1] - downOffsets[u];
+            }
+        }
+
+        SearchStats.record(settled, relaxed);
+        return meet;
+    }
+
+    private static void relax(int u, double du, SearchContext search, int[] offsets, int[] ends, double[] weights) {
+        for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+            int x = ends[e];
+            double dist = du + weights[e];
+            if (dist < search.dist(x)) {
+                search.update(x, dist, u);
+                search.heap().addOrDecrease(x, dist);
+            }
+        }
+    }
+
+    /**
+     * Stall on demand: if a higher ranked vertex already reached by this search has a shorter way down to u then
+     * u's distance isn't a shortest one and there's no point searching onwards from it.
+     */
+    private static boolean isStalled(int u, double du, SearchContext search, int[] offsets, int[] ends,
+                                     double[] weights) {
+        for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+            if (search.dist(ends[e]) + weights[e] < du) return true;
+        }
+        return false;
+    }
+
+    // Path unpacking
+
+    private List<E> unpackPath(int meet, SearchContext forward, SearchContext backward) {
+        // Hierarchy vertices from s up to meet, then down to t
+        IntStack hierarchyPath = new IntStack();
+        for (int v = meet; v >= 0; v = forward.parent(v)) {
+            hierarchyPath.push(v);
+        }
+        hierarchyPath.reverse();
+        for (int v = backward.parent(meet); v >= 0; v = backward.parent(v)) {
+            hierarchyPath.push(v);
+        }
+
+        List<E> path = new ArrayList<>();
+        path.add(graph.vertexAt(hierarchyPath.get(0)));
+        IntStack pending = new IntStack();
+        for (int i = 0; i + 1 < hierarchyPath.size(); i++) {
+            unpackEdge(hierarchyPath.get(i), hierarchyPath.get(i + 1), pending, path);
+        }
+        return path;
+    }
+
+    /**
+     * Expands the hierarchy edge a -> b into original edges, appending every vertex after a to path.
+     */
+    private void unpackEdge(int a, int b, IntStack pending, List<E> path) {
+        pending.push(b);
+        pending.push(a);
+        while (!pending.isEmpty()) {
+            int from = pending.pop();
+            int to = pending.pop();
+            int middle = middle(from, to);
+            if (middle < 0) {
+                path.add(graph.vertexAt(to));
+            } else {
+                // Unpack from -> middle first, so push middle -> to underneath it
+                pending.push(to);
+                pending.push(middle);
+                pending.push(middle);
+                pending.push(from);
+            }
+        }
+    }
+
+    /**
+     * @return the vertex the hierarchy edge from -> to skips, -1 if it is an original edge
+     */
+    private int middle(int from, int to) {
+        if (rank[from] < rank[to]) {
+            for (int e = upOffsets[from]; e < upOffsets[from + 1]; e++) {
+                if (upTargets[e] == to) return upMiddle[e];
+            }
+        } else {
+            for (int e = downOffsets[to]; e < downOffsets[to + 1]; e++) {
+                if (downSources[e] == from) return downMiddle[e];
+            }
+        }
+        throw new IllegalStateException("Missing hierarchy edge " + from + " -> " + to);
+    }
+
+    // Preprocessing
+
+    /**
+     * The working graph while vertices are being contracted. Edges to contracted vertices are removed as soon as
+     * the vertex is contracted, so when a vertex is contracted its own lists hold exactly its edges to higher
+     * ranked vertices and become its upward/downward edges.
+     */
+    private static final class Contractor {
+        private final int n;
+        private final Adjacency[] out;
+        private final Adjacency[] in;
+        private final int[] rank;
+        private final int[] deletedNeighbors;
+        private final int[] level;
+        private final int[] mark;
+        private final int[] targetMark;
+        private int targetStamp;
+        private final SearchContext witness;
+
+        Contractor(CSRGraph<?, ?> graph) {
+            this.n = graph.vertexCount();
+            this.out = new Adjacency[n];
+            this.in = new Adjacency[n];
+            this.rank = new int[n];
+            this.deletedNeighbors = new int[n];
+            this.level = new int[n];
+            this.mark = new int[n];
+            this.targetMark = new int[n];
+            this.witness = new SearchContext(n);
+
+            for (int v = 0; v < n; v++) {
+                out[v] = new Adjacency(graph.outEnd(v) - graph.outStart(v));
+                in[v] = new Adjacency(4);
+            }
+            for (int u = 0; u < n; u++) {
+                for (int e = graph.outStart(u); e < graph.outEnd(u); e++) {
+                    int v = graph.target(e);
+                    if (u != v) addEdge(u, v, graph.weight(e), -1);
+                }
+            }
+            Arrays.fill(rank, -1);
+            Arrays.fill(mark, -1);
+        }
+
+        void contractAll() {
+            IntIndexedMinHeap order = new IntIndexedMinHeap(n);
+            for (int v = 0; v < n; v++) {
+                order.add(v, priority(v));
+            }
+
+            int nextRank = 0;
+            while (!order.isEmpty()) {
+                int v = order.poll();
+
+                // Lazy update, priorities go stale as the graph changes around a vertex
+                double priority = priority(v);
+                if (!order.isEmpty() && priority > order.peekPriority()) {
+                    order.add(v, priority);
+                    continue;
+                }
+
+                contract(v, false);
+                rank[v] = nextRank++;
+                detach(v);
+            }
+        }
+
+        /**
+         * Edge difference weighted double, plus the contracted neighbour count and the hierarchy depth so
+         * contraction spreads evenly over the map instead of eating into one region.
+         */
+        private double priority(int v) {
+            int removed = out[v].size + in[v].size;
+            return 2.0 * (contract(v, true) - removed) + deletedNeighbors[v] + level[v];
+        }
+
+        /**
+         * Finds the shortcuts needed to remove v from the working graph, and adds them unless simulating.
+         *
+         * @return the number of shortcuts needed
+         */
+        private int contract(int v, boolean simulate) {
+            Adjacency inV = in[v];
+            Adjacency outV = out[v];
+            if (inV.size == 0 || outV.size == 0) return 0;
+
+            double maxOut = 0;
+            for (int j = 0; j < outV.size; j++) {
+                maxOut = Math.max(maxOut, outV.weights[j]);
+            }
+
+            int shortcuts = 0;
+            for (int i = 0; i < inV.size; i++) {
+                int u = inV.ends[i];
+                double du = inV.weights[i];
+                int targets = 0;
+                targetStamp++;
+                for (int j = 0; j < outV.size; j++) {
+                    if (outV.ends[j] != u) {
+                        targetMark[outV.ends[j]] = targetStamp;
+                        targets++;
+                    }
+                }
+                witnessSearch(u, v, du + maxOut, targets, simulate ? SIMULATE_SETTLE_LIMIT : CONTRACT_SETTLE_LIMIT);
+
+                for (int j = 0; j < outV.size; j++) {
+                    int w = outV.ends[j];
+                    if (w == u) continue;
+
+                    double via = du + outV.weights[j];
+                    if (witness.dist(w) > via) {
+                        shortcuts++;
+                        if (!simulate) addEdge(u, w, via, v);
+                    }
+                }
+            }
+            return shortcuts;
+        }
+
+        /**
+         * Dijkstra from source in the working graph without going through excluded, up to maxDistance.
+         */
+        private void witnessSearch(int source, int excluded, double maxDistance, int targets, int settleLimit) {
+            witness.reset(n);
+            IntIndexedMinHeap pq = witness.heap();
+            witness.update(source, 0, -1);
+            pq.add(source, 0);
+
+            int settled = 0;
+            while (!pq.isEmpty() && settled++ < settleLimit) {
+                if (pq.peekPriority() > maxDistance) break;
+                int u = pq.poll();
+                double du = witness.dist(u);
+                if (targetMark[u] == targetStamp && --targets == 0) break;
+
+                Adjacency edges = out[u];
+                for (int e = 0; e < edges.size; e++) {
+                    int x = edges.ends[e];
+                    if (x == excluded) continue;
+                    double dist = du + edges.weights[e];
+                    if (dist < witness.dist(x)) {
+                        witness.update(x, dist, u);
+                        pq.addOrDecrease(x, dist);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Removes v's edges from its neighbours' lists and records that the neighbours lost one. Their priorities
+         * only go up from this so they are left for the lazy update to catch when they reach the top.
+         */
+        private void detach(int v) {
+            Adjacency outV = out[v];
+            Adjacency inV = in[v];
+            for (int i = 0; i < outV.size; i++) {
+                in[outV.ends[i]].remove(v);
+            }
+            for (int i = 0; i < inV.size; i++) {
+                out[inV.ends[i]].remove(v);
+            }
+
+            for (int pass = 0; pass < 2; pass++) {
+                Adjacency neighbors = pass == 0 ? outV : inV;
+                for (int i = 0; i < neighbors.size; i++) {
+                    int x = neighbors.ends[i];
+                    if (mark[x] == v) continue;
+                    mark[x] = v;
+                    deletedNeighbors[x]++;
+                    level[x] = Math.max(level[x], level[v] + 1);
+                }
+            }
+        }
+
+        /**
+         * Adds the edge u -> v to the working graph, keeping only the shorter one if it already exists.
+         */
+        private void addEdge(int u, int v, double weight, int middle) {
+            out[u].addOrMin(v, weight, middle);
+            in[v].addOrMin(u, weight, middle);
+        }
+    }
+
+    /**
+     * A growable list of edges out of (or into) a single vertex.
+     */
+    private static final class Adjacency {
+        int[] ends;
+        double[] weights;
+        int[] middles;
+        int size;
+
+        Adjacency(int capacity) {
+            capacity = Math.max(capacity, 2);
+            ends = new int[capacity];
+            weights = new double[capacity];
+            middles = new int[capacity];
+        }
+
+        void addOrMin(int end, double weight, int middle) {
+            for (int i = 0; i < size; i++) {
+                if (ends[i] == end) {
+                    if (weight < weights[i]) {
+                        weights[i] = weight;
+                        middles[i] = middle;
+                    }
+                    return;
+                }
+            }
+            if (size == ends.length) {
+                int capacity = size * 2;
+                ends = Arrays.copyOf(ends, capacity);
+                weights = Arrays.copyOf(weights, capacity);
+                middles = Arrays.copyOf(middles, capacity);
+            }
+            ends[size] = end;
+            weights[size] = weight;
+            middles[size] = middle;
+            size++;
+        }
+
+        void remove(int end) {
+            for (int i = 0; i < size; i++) {
+                if (ends[i] == end) {
+                    size--;
+                    ends[i] = ends[size];
+                    weights[i] = weights[size];
+                    middles[i] = middles[size];
+                    return;
+                }
+            }
+        }
+
+        void copyTo(int offset, int[] ends, double[] weights, int[] middles) {
+            System.arraycopy(this.ends, 0, ends, offset, size);
+            System.arraycopy(this.weights, 0, weights, offset, size);
+            System.arraycopy(this.middles, 0, middles, offset, size);
+        }
+    }
+
+    /**
+     * A growable stack of ints, used for unpacking without recursion (shortcut chains can get very deep).
+     */
+    private static final class IntStack {
+        private int[] values = new int[16];
+        private int size;
+
+        void push(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int pop() {
+            return values[--size];
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void reverse() {
+            for (int i = 0, j = size - 1; i < j; i++, j--) {
+                int tmp = values[i];
+                values[i] = values[j];
+                values[j] = tmp;
+            }
+        }
+    }
+}
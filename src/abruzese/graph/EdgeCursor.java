@@ -0,0 +1,49 @@
+package abruzese.graph;
+
+import abruzese.graph.edges.EdgeWeight;
+
+/**
+ * Walks every edge of a graph without making an object for each one. Move onto each edge in turn with next(), then
+ * read its ends and weight:
+ * <pre>
+ * EdgeCursor&lt;E, W&gt; edges = graph.edgeCursor();
+ * while (edges.next()) {
+ *     use(edges.from(), edges.to(), edges.weight());
+ * }
+ * </pre>
+ * No order is guaranteed, and the graph mustn't change while a cursor is walking it.
+ *
+ * @param <E> The type of elements in the graph
+ * @param <W> The type of weight used for edges
+ */
+public interface EdgeCursor<E, W extends EdgeWeight> {
+    /**
+     * Moves onto the next edge.
+     *
+     * @return false once every edge has been visited
+     */
+    boolean next();
+
+    /**
+     * @return the source of the current edge
+     */
+    E from();
+
+    /**
+     * @return the destination of the current edge
+     */
+    E to();
+
+    /**
+     * @return the weight of the current edge
+     */
+    W weight();
+
+    /**
+     * @return weight().getWeight(), which frozen graphs can read straight out of their arrays without making the
+     *         weight object
+     */
+    default double weightValue() {
+        return weight().getWeight();
+    }
+}
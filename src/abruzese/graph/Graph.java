@@ -5,11 +5,17 @@ import abruzese.hashtable.HashTable;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.function.BiConsumer;
 
 /**
  * Represents a mutable graph data structure. A graph is directed and uses
  * generic edge weights. The graph may contain cycles. The graph permits any
  * non-null elements as vertices.
+ * <p>
+ * Concurrent reads are safe: any number of threads may call the non-mutating
+ * methods (get, getVertices, path, distance, pathAStar, ...) on the same graph
+ * at once, provided no thread mutates it during that time. Mutations must be
+ * synchronized externally against all other access.
  *
  * @param <E> The type of elements in the graph
  * @param <W> The type of weight used for edges
@@ -47,17 +53,78 @@ public abstract class Graph<E, W extends EdgeWeight> implements Iterable<E>, Ser
     public abstract W set(E from, E to, W weight);
 
     /**
-     * @return a set of the vertices in the graph.
+     * @return a read only set of the vertices in the graph. It may be a live view rather than a copy: it changes as
+     *         the graph does, and iterating it while the graph gains or loses vertices throws
+     *         ConcurrentModificationException. Copy it first to change the graph while going through it.
      */
     public abstract Set<E> getVertices();
 
     /**
-     * @return a set of the directed Edges (source to destination) in the graph.
+     * @return a set of the directed Edges (source to destination) in the graph. This makes a new set with an entry
+     *         per edge every call, use {@link #edgeCursor()} to just walk them.
      */
     public abstract Set<HashTable.Entry<E, E>> getEdges();
 
     /**
-     * @return An iterator over the vertices in the graph. No order is guaranteed.
+     * The default walks getVertices() and getConnected() and looks each weight up with get(), graphs that can read
+     * their edges directly override it.
+     *
+     * @return a cursor over every directed edge in the graph
+     */
+    public EdgeCursor<E, W> edgeCursor() {
+        return new EdgeCursor<>() {
+            private final Iterator<E> vertices = getVertices().iterator();
+            private Iterator<E> neighbors = Collections.emptyIterator();
+            private E from;
+            private E to;
+
+            @Override
+            public boolean next() {
+                while (!neighbors.hasNext()) {
+                    if (!vertices.hasNext()) return false;
+                    from = vertices.next();
+                    neighbors = getConnected(from).iterator();
+                }
+                to = neighbors.next();
+                return true;
+            }
+
+            @Override
+            public E from() {
+                return from;
+            }
+
+            @Override
+            public E to() {
+                return to;
+            }
+
+            @Override
+            public W weight() {
+                return get(from, to);
+            }
+        };
+    }
+
+    /**
+     * Calls action with the destination and weight of every edge out of source, in time proportional to the number
+     * of those edges.
+     *
+     * @param source the source vertex of the edges
+     * @param action called with (destination, weight) for each edge
+     * @throws NoSuchElementException if source is not in this graph
+     */
+    public void forEachOutEdge(E source, BiConsumer<? super E, ? super W> action) {
+        if (!contains(source)) throw new NoSuchElementException("Source vertex does not exist: " + source);
+        for (E to : getConnected(source)) {
+            action.accept(to, get(source, to));
+        }
+    }
+
+    /**
+     * @return An iterator over the vertices in the graph. No order is guaranteed. It iterates
+     *         {@link #getVertices()}, so it can't remove vertices and may throw ConcurrentModificationException if
+     *         the graph gains or loses vertices while it's in use.
      */
     @Override
     public Iterator<E> iterator() {
@@ -134,10 +201,15 @@ public abstract class Graph<E, W extends EdgeWeight> implements Iterable<E>, Ser
      * Removes all edges in this graph.
      */
     public void clearEdges() {
-        for (E from : this) {
-            for (E to : this) {
-                removeEdge(from, to);
-            }
+        // The cursor can't keep walking while edges are removed under it, so the ends are read out first
+        List<E> ends = new ArrayList<>();
+        EdgeCursor<E, W> edges = edgeCursor();
+        while (edges.next()) {
+            ends.add(edges.from());
+            ends.add(edges.to());
+        }
+        for (int i = 0; i < ends.size(); i += 2) {
+            removeEdge(ends.get(i), ends.get(i + 1));
         }
     }
 
@@ -159,10 +231,7 @@ public abstract class Graph<E, W extends EdgeWeight> implements Iterable<E>, Ser
      */
     public Collection<E> neighbors(E source) {
         List<E> neighbors = new ArrayList<>();
-        Set<E> vertices = getVertices();
-        for (E vert : vertices) {
-            if (get(source, vert) != null) neighbors.add(vert);
-        }
+        forEachOutEdge(source, (to, weight) -> neighbors.add(to));
         return neighbors;
     }
 
@@ -176,7 +245,8 @@ public abstract class Graph<E, W extends EdgeWeight> implements Iterable<E>, Ser
      * Retrieve the vertices reachable from source.
      *
      * @param source the source that the returned vertices are reachable from
-     * @return a collection of every vertex reachable from source
+     * @return a collection of every vertex reachable from source. Like {@link #getVertices()} it may be a live, read
+     *         only, fail-fast view, so copy it before adding or removing edges from source while going through it
      * @throws IllegalArgumentException if source doesn't exist in this graph
      */
     public abstract Collection<E> getConnected(E source);
@@ -200,6 +270,16 @@ public abstract class Graph<E, W extends EdgeWeight> implements Iterable<E>, Ser
      */
     public abstract Graph<E, W> subgraph(Collection<E> vertices);
 
+    /**
+     * Copies this graph into an immutable compressed sparse row graph. Use this once a graph is done being built,
+     * pathfinding on the frozen graph runs over primitive arrays instead of hashtables.
+     *
+     * @return an immutable copy of this graph
+     */
+    public CSRGraph<E, W> freeze() {
+        return CSRGraph.of(this);
+    }
+
     /**
      * Joins other onto this graph including edges.
      *
@@ -207,11 +287,9 @@ public abstract class Graph<E, W extends EdgeWeight> implements Iterable<E>, Ser
      */
     public void union(Graph<E, W> other) {
         addAll(other.getVertices());
-        for (HashTable.Entry<E, E> edge : other.getEdges()) {
-            W weight = other.get(edge.getKey(), edge.getValue());
-            if (weight != null) {
-                set(edge.getKey(), edge.getValue(), weight);
-            }
+        EdgeCursor<E, W> edges = other.edgeCursor();
+        while (edges.next()) {
+            set(edges.from(), edges.to(), edges.weight());
         }
     }
 
@@ -225,6 +303,40 @@ public abstract class Graph<E, W extends EdgeWeight> implements Iterable<E>, Ser
      */
     public abstract List<E> path(E from, E to);
 
+    /**
+     * Finds a path between two vertices using A* with a haversine heuristic.
+     *
+     * @param from The vertex to start from
+     * @param to The vertex to end at
+     * @param coordinates a map from vertex to [latitude, longitude]
+     * @return A list of vertices representing the path between the two vertices. Empty list if no path exists
+     * @throws IllegalArgumentException if from or to have no coordinates
+     */
+    public List<E> pathAStar(E from, E to, HashTable<E, double[]> coordinates) {
+        Objects.requireNonNull(from, "Source vertex cannot be null");
+        Objects.requireNonNull(to, "Destination vertex cannot be null");
+        Objects.requireNonNull(coordinates, "Coordinates map cannot be null");
+
+        if (!coordinates.containsKey(from) || !coordinates.containsKey(to)) {
+            throw new IllegalArgumentException("Missing coordinates for source or destination vertex");
+        }
+
+        return pathAStar(from, to, Heuristic.haversine(coordinates));
+    }
+
+    /**
+     * Finds a path between two vertices using A*. Graphs that can't make use of a heuristic fall back to
+     * {@link #path(Object, Object)}.
+     *
+     * @param from The vertex to start from
+     * @param to The vertex to end at
+     * @param heuristic a lower bound on the distance left from a vertex to the destination
+     * @return A list of vertices representing the path between the two vertices. Empty list if no path exists
+     */
+    public List<E> pathAStar(E from, E to, Heuristic<E> heuristic) {
+        return path(from, to);
+    }
+
     /**
      * Finds a path between two vertices using Depth First Search.
      *
@@ -294,6 +406,22 @@ public abstract class Graph<E, W extends EdgeWeight> implements Iterable<E>, Ser
      */
     public abstract EdgeWeight distance(E from, E to);
 
+    /**
+     * Finds the shortest distance from every source to every target. Runs one search per source that stops as
+     * soon as all the targets are settled, which is much cheaper than a distance() call per pair.
+     * <p>
+     * The default implementation freezes the graph first, call it on a frozen graph to skip that.
+     *
+     * @param sources The vertices to start from
+     * @param targets The vertices to end at
+     * @return matrix[i][j] is the distance from sources.get(i) to targets.get(j), or
+     *         Double.POSITIVE_INFINITY if no path exists
+     * @throws IllegalArgumentException if a source or target isn't in the graph
+     */
+    public double[][] distanceMatrix(List<E> sources, List<E> targets) {
+        return freeze().distanceMatrix(sources, targets);
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(getVertices(), getEdges());
@@ -0,0 +1,52 @@
+package abruzese.graph;
+
+import abruzese.hashtable.HashTable;
+
+/**
+ * Estimates the remaining distance from a vertex to a target for A*. The estimate must never be more than the
+ * actual shortest distance or A* may return a path that isn't the shortest.
+ *
+ * @param <E> The type of elements in the graph
+ */
+@FunctionalInterface
+public interface Heuristic<E> {
+    /**
+     * @return a lower bound on the shortest distance from vertex to target
+     */
+    double estimate(E vertex, E target);
+
+    /**
+     * The straight line distance in meters between the coordinates of two vertices, the same unit roads are
+     * weighted in. MapBuilder rounds each road down to a whole meter though, so this can be up to a meter per road
+     * over the distance by road and A* with it may now and then return a path a meter or two longer than the shortest.
+     *
+     * @param coordinates a map from vertex to [latitude, longitude]
+     */
+    static <E> Heuristic<E> haversine(HashTable<E, double[]> coordinates) {
+        return (vertex, target) -> {
+            double[] from = coordinates.get(vertex);
+            double[] to = coordinates.get(target);
+            return haversineDistance(from[0], from[1], to[0], to[1]);
+        };
+    }
+
+    /**
+     * Calculates the Haversine distance between two points on Earth
+     * @return Distance in meters
+     */
+    private static double haversineDistance(double lat1, double lon1, double lat2, double lon2) {
+        final double R = 6371000.0; // Earth's radius in meters, the same as Helpers.estimateDistance
+
+        lat1 = Math.toRadians(lat1);
+        lat2 = Math.toRadians(lat2);
+        double dLat = lat2 - lat1;
+        double dLon = Math.toRadians(lon2 - lon1);
+
+        double a = Math.sin(dLat/2) * Math.sin(dLat/2) +
+                Math.cos(lat1) * Math.cos(lat2) *
+                        Math.sin(dLon/2) * Math.sin(dLon/2);
+
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1-a));
+        return R * c;
+    }
+}
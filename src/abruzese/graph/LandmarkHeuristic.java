@@ -0,0 +1,138 @@
+package abruzese.graph;
+
+import java.util.Arrays;
+
+/**
+ * The ALT (A*, Landmarks, Triangle inequality) heuristic. A handful of landmark vertices are picked and the
+ * shortest distances to and from every landmark are precomputed. By the triangle inequality, for any landmark L
+ * <pre>
+ *     d(v, t) >= d(v, L) - d(t, L)   and   d(v, t) >= d(L, t) - d(L, v)
+ * </pre>
+ * so the largest of these over all landmarks is a lower bound on the distance left. Unlike the straight line
+ * distance it's measured in the graph's own edge weights and follows the roads, so it is much tighter and A*
+ * settles far fewer vertices.
+ * <p>
+ * Landmarks are picked by farthest point selection: each new landmark is the vertex farthest from all the ones
+ * picked so far, which spreads them around the edge of the map where they give the best bounds.
+ * <p>
+ * Memory use is 16 bytes per vertex per landmark.
+ *
+ * @param <E> The type of elements in the graph
+ */
+public class LandmarkHeuristic<E> implements Heuristic<E> {
+    public static final int DEFAULT_LANDMARKS = 16;
+
+    private final CSRGraph<E, ?> graph;
+    private final int[] landmarks;
+    private final int k;
+    private final double[] fromLandmark; // d(L_i, v) at v * k + i
+    private final double[] toLandmark;   // d(v, L_i) at v * k + i
+
+    private LandmarkHeuristic(CSRGraph<E, ?> graph, int[] landmarks, double[] fromLandmark, double[] toLandmark) {
+        this.graph = graph;
+        this.landmarks = landmarks;
+        this.k = landmarks.length;
+        this.fromLandmark = fromLandmark;
+        this.toLandmark = toLandmark;
+    }
+
+    public static <E> LandmarkHeuristic<E> build(CSRGraph<E, ?> graph) {
+        return build(graph, DEFAULT_LANDMARKS);
+    }
+
+    /**
+     * Picks count landmarks (fewer if the graph is smaller than that) and precomputes their distances. Runs two
+     * full Dijkstra searches per landmark.
+     */
+    public static <E> LandmarkHeuristic<E> build(CSRGraph<E, ?> graph, int count) {
+        if (count < 1) throw new IllegalArgumentException("Need at least one landmark");
+
+        int n = graph.vertexCount();
+        int k = Math.min(count, n);
+        CSRGraph<E, ?> reverse = graph.reverse();
+        SearchContext context = new SearchContext(n);
+
+        int[] landmarks = new int[k];
+        double[] fromLandmark = new double[n * k];
+        double[] toLandmark = new double[n * k];
+
+        // Closest distance from any landmark picked so far, unreachable vertices count as infinitely far so
+        // every component gets a landmark before one component gets two
+        double[] nearest = new double[n];
+        Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+
+        // Start from the vertex farthest from an arbitrary one
+        int next = n == 0 ? -1 : farthest(graph, 0, context);
+        for (int i = 0; i < k; i++) {
+            landmarks[i] = next;
+
+            context.reset(n);
+            graph.dijkstra(next, -1, context);
+            for (int v = 0; v < n; v++) {
+                double dist = context.dist(v);
+                fromLandmark[v * k + i] = dist;
+                nearest[v] = Math.min(nearest[v], dist);
+            }
+
+            context.reset(n);
+            reverse.dijkstra(next, -1, context);
+            for (int v = 0; v < n; v++) {
+                toLandmark[v * k + i] = context.dist(v);
+            }
+
+            next = 0;
+            for (int v = 1; v < n; v++) {
+                if (nearest[v] > nearest[next]) next = v;
+            }
+        }
+
+        return new LandmarkHeuristic<>(graph, landmarks, fromLandmark, toLandmark);
+    }
+
+    private static int farthest(CSRGraph<?, ?> graph, int source, SearchContext context) {
+        context.reset(graph.vertexCount());
+        graph.dijkstra(source, -1, context);
+
+        int farthest = source;
+        for (int v = 0; v < graph.vertexCount(); v++) {
+            if (context.reached(v) && context.dist(v) > context.dist(farthest)) farthest = v;
+        }
+        return farthest;
+    }
+
+    public CSRGraph<E, ?> getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return the dense ids of the landmarks
+     */
+    public int[] getLandmarks() {
+        return landmarks.clone();
+    }
+
+    @Override
+    public double estimate(E vertex, E target) {
+        int v = graph.indexOf(vertex);
+        int t = graph.indexOf(target);
+        if (v < 0 || t < 0) return 0;
+        return estimate(v, t);
+    }
+
+    /**
+     * @return a lower bound on the distance from dense id v to dense id t. Infinity means t can't be reached
+     */
+    public double estimate(int v, int t) {
+        double best = 0;
+        int vi = v * k;
+        int ti = t * k;
+        for (int i = 0; i < k; i++) {
+            // Comparisons with NaN are false, so landmarks that neither vertex can reach are skipped
+            double toBound = toLandmark[vi + i] - toLandmark[ti + i];
+            if (toBound > best) best = toBound;
+            double fromBound = fromLandmark[ti + i] - fromLandmark[vi + i];
+            if (fromBound > best) best = fromBound;
+        }
+        return best;
+    }
+}
@@ -0,0 +1,100 @@
+package abruzese.graph;
+
+import abruzese.priorityQueue.DialQueue;
+import abruzese.priorityQueue.IntIndexedMinHeap;
+
+import java.util.Arrays;
+
+/**
+ * Reusable per-thread state for searches over dense vertex ids: tentative distances, parents and a frontier heap.
+ * <p>
+ * Instead of refilling the arrays before every query each slot is stamped with the generation it was written in,
+ * a slot from an older generation reads as unvisited. reset() is therefore O(1) and a query allocates nothing once
+ * the arrays have grown to the size of the graph.
+ * <p>
+ * Not thread safe, each thread should use its own context.
+ */
+public final class SearchContext {
+    private double[] dist;
+    private int[] parent;
+    private int[] stamp;
+    private int generation;
+    private final IntIndexedMinHeap heap;
+    private DialQueue bucketQueue; // only made once a search asks for it
+
+    public SearchContext(int capacity) {
+        this.dist = new double[capacity];
+        this.parent = new int[capacity];
+        this.stamp = new int[capacity];
+        this.generation = 0;
+        this.heap = new IntIndexedMinHeap(capacity);
+    }
+
+    /**
+     * Starts a new search over vertex ids 0 until capacity. Everything written by earlier searches is forgotten.
+     */
+    public void reset(int capacity) {
+        if (capacity > stamp.length) {
+            dist = Arrays.copyOf(dist, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            stamp = Arrays.copyOf(stamp, capacity);
+            heap.ensureCapacity(capacity);
+        }
+        heap.clear();
+        if (bucketQueue != null) {
+            bucketQueue.ensureCapacity(stamp.length);
+            bucketQueue.clear();
+        }
+
+        if (++generation == 0) {
+            // Wrapped around after 2^32 searches, stamps from old generations could look current again
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * @return true if v has been reached by the current search
+     */
+    public boolean reached(int v) {
+        return stamp[v] == generation;
+    }
+
+    /**
+     * @return the tentative distance of v, or infinity if it hasn't been reached
+     */
+    public double dist(int v) {
+        return stamp[v] == generation ? dist[v] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return the vertex v was reached from, or -1 if v is a source or hasn't been reached
+     */
+    public int parent(int v) {
+        return stamp[v] == generation ? parent[v] : -1;
+    }
+
+    /**
+     * Records that v can be reached with the given distance through parent.
+     */
+    public void update(int v, double distance, int parent) {
+        this.dist[v] = distance;
+        this.parent[v] = parent;
+        this.stamp[v] = generation;
+    }
+
+    public IntIndexedMinHeap heap() {
+        return heap;
+    }
+
+    /**
+     * @return a bucket queue for searches whose edge weights are whole numbers no bigger than maxWeight, made the
+     *         first time it's needed and reused after that
+     */
+    public DialQueue bucketQueue(int maxWeight) {
+        if (bucketQueue == null || bucketQueue.getMaxGap() < maxWeight) {
+            bucketQueue = new DialQueue(maxWeight, stamp.length);
+        }
+        return bucketQueue;
+    }
+}
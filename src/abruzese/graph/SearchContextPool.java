@@ -0,0 +1,49 @@
+package abruzese.graph;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A small lock free pool of {@link SearchContext}s so concurrent queries each get their own context without
+ * allocating one per query.
+ * <p>
+ * A pool is used rather than a ThreadLocal because the callers may be virtual threads, which would each end up
+ * with their own graph sized context that is thrown away when the thread finishes.
+ */
+public final class SearchContextPool {
+    private final AtomicReferenceArray<SearchContext> slots;
+    private final int capacity;
+
+    /**
+     * @param capacity the number of vertices the contexts need to hold
+     */
+    public SearchContextPool(int capacity) {
+        this.slots = new AtomicReferenceArray<>(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+        this.capacity = capacity;
+    }
+
+    /**
+     * Takes a context out of the pool, or makes a new one if every pooled context is in use.
+     *
+     * @return a context that was reset for a new search
+     */
+    public SearchContext acquire() {
+        SearchContext context = null;
+        for (int i = 0; i < slots.length() && context == null; i++) {
+            if (slots.getPlain(i) != null) context = slots.getAndSet(i, null);
+        }
+        if (context == null) context = new SearchContext(capacity);
+
+        context.reset(capacity);
+        return context;
+    }
+
+    /**
+     * Returns a context to the pool. The context must not be used by the caller afterwards.
+     */
+    public void release(SearchContext context) {
+        for (int i = 0; i < slots.length(); i++) {
+            if (slots.getPlain(i) == null && slots.compareAndSet(i, null, context)) return;
+        }
+        // Pool is full, let the context be garbage collected
+    }
+}
@@ -0,0 +1,51 @@
+package abruzese.graph;
+
+/**
+ * Counters from the most recent shortest path query made by the calling thread, for checking how much work a
+ * search did (e.g. bidirectional vs one directional, or ALT vs haversine A*).
+ * <pre>
+ *     graph.path(from, to);
+ *     int settled = SearchStats.last().nodesSettled();
+ * </pre>
+ */
+public final class SearchStats {
+    private static final ThreadLocal<SearchStats> LAST = ThreadLocal.withInitial(SearchStats::new);
+
+    private int nodesSettled;
+    private int edgesRelaxed;
+
+    private SearchStats() {
+    }
+
+    /**
+     * @return the counters of the calling thread's last query, they are overwritten by its next query
+     */
+    public static SearchStats last() {
+        return LAST.get();
+    }
+
+    static void record(int nodesSettled, int edgesRelaxed) {
+        SearchStats stats = LAST.get();
+        stats.nodesSettled = nodesSettled;
+        stats.edgesRelaxed = edgesRelaxed;
+    }
+
+    /**
+     * @return the number of vertices taken off the frontier
+     */
+    public int nodesSettled() {
+        return nodesSettled;
+    }
+
+    /**
+     * @return the number of edges looked at while expanding settled vertices
+     */
+    public int edgesRelaxed() {
+        return edgesRelaxed;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchStats{nodesSettled=" + nodesSettled + ", edgesRelaxed=" + edgesRelaxed + "}";
+    }
+}
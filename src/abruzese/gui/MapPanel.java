@@ -6,7 +6,8 @@ import abruzese.graph.Graph;
 import abruzese.graph.edges.Road;
 import abruzese.graph.vertices.Intersection;
 import abruzese.gui.components.Button;
-import abruzese.hashtable.HashTable;
+import abruzese.util.Helpers;
+import abruzese.util.SpatialIndex;
 
 import java.awt.*;
 import java.awt.event.ComponentAdapter;
@@ -15,13 +16,38 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
-
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Draws the map as a pyramid of fixed size tiles, the way slippy maps do. Zoom level z draws the whole map 2^z times
+ * the size of the panel, cut into TILE_SIZE pixel squares. Each tile is only drawn the first time it comes into
+ * view and is kept in a {@link TileCache} after that, so panning only draws the tiles it uncovers. Zooming in
+ * between levels stretches the nearest level's tiles by at most √2 either way until the next level is closer.
+ * <p>
+ * Highlighted routes and intersections are drawn over the tiles on every paint instead of into them, so changing
+ * them never throws tiles away.
+ * <p>
+ * paint never draws a tile itself. Tiles that aren't cached yet are asked for from a background render thread, and
+ * in the meantime their spot is filled in with whatever's cached of it at the levels above and below, stretched to
+ * fit, so the old view keeps showing at the new scale until the new tiles are in. Each finished tile goes into the
+ * cache whole and the panel repaints. Asking for a new set of tiles cancels whatever's left of the last request, so
+ * dragging or zooming quickly never queues up tiles for views that are already gone.
+ */
 public class MapPanel extends Canvas {
     // Constants
     private static final double ZOOM_FACTOR = 1.1;
-    private static final double MIN_QUALITY_THRESHOLD = 0.5;
-    private static final double MAX_QUALITY_THRESHOLD = 2.0;
-    private static final int BUFFER_PADDING = 2000;
+    private static final int TILE_SIZE = 256;
+    private static final int MAX_TILE_ZOOM = 20; // past this the level 20 tiles are stretched instead
+    private static final long TILE_CACHE_BYTES = 64L << 20;
+    private static final int TILE_MARGIN = 4; // pixels, so dots on a tile's edge are drawn on both sides of it
+    private static final int DOT_SIZE = 4;
     private static final double MIN_ZOOM = 1;
     private static final int CLICK_TOLERANCE = 10; // pixels
     private static final float HIGHLIGHT_WIDTH = 4.0f;
@@ -29,25 +55,41 @@ public class MapPanel extends Canvas {
     private static final int BUTTON_HEIGHT = 25;
     private static final int BUTTON_PADDING = 10;
     private static final Color HIGHLIGHT_COLOR = new Color(255, 69, 0);
+    private static final Pattern NUMBERED_INTERSECTION = Pattern.compile("i\\d+$");
 
     // Core data structures
     private final Graph<Intersection, Road> streetGraph;
     private final CommandHandler commandHandler;
+    private final SpatialIndex spatialIndex;
 
     // View state
     private double minLat = Double.MAX_VALUE, maxLat = Double.MIN_VALUE;
     private double minLon = Double.MAX_VALUE, maxLon = Double.MIN_VALUE;
     private double actualScale = 1.0;
-    private double bufferScale = 1.0;
     private Point2D.Double center;
     private Point lastMousePos;
     private boolean isDragging = false;
     private final Point2D.Double initialCenter;
     private final double initialScale;
 
+    // One thread draws tiles for every panel, it's a daemon so an open map doesn't keep the program running
+    private static final ExecutorService RENDERER = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "MapPanel tiles");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Tiles, drawn for the panel size they were made at. That size is only changed or checked holding the cache's
+    // lock, so a tile drawn for the old size never gets in after a resize
+    private final TileCache tiles = new TileCache(TILE_CACHE_BYTES);
+    private int tileWidth = -1, tileHeight = -1;
+
+    // The tiles last asked for and which request that was, a request gives up once it isn't the newest anymore
+    private final AtomicInteger renderRequest = new AtomicInteger();
+    private volatile int finishedRequest;
+    private List<TileCache.Key> requested = List.of();
+
     // UI Components
-    private BufferedImage mapBuffer;
-    private final Rectangle viewport;
     private final Button resetButton;
 
     // Highlighting
@@ -56,8 +98,16 @@ public class MapPanel extends Canvas {
 
     // Constructor
     public MapPanel(Graph<Intersection, Road> graph, CommandHandler commandHandler) {
+        this(graph, SpatialIndex.build(graph), commandHandler);
+    }
+
+    /**
+     * Draws the graph with a spatial index that's already been built for it, so it isn't built twice.
+     */
+    public MapPanel(Graph<Intersection, Road> graph, SpatialIndex spatialIndex, CommandHandler commandHandler) {
         this.streetGraph = graph;
         this.commandHandler = commandHandler;
+        this.spatialIndex = spatialIndex;
 
         initializeBounds();
         setupMouseListeners();
@@ -70,16 +120,14 @@ public class MapPanel extends Canvas {
         initialCenter = new Point2D.Double(center.x, center.y);
         initialScale = actualScale;
 
-        viewport = new Rectangle();
         resetButton = new Button("Reset View");
         updateResetButtonPosition();
 
         addComponentListener(new ComponentAdapter() {
             @Override
             public void componentResized(ComponentEvent e) {
-                updateViewport();
-                createMapBuffer();
                 updateResetButtonPosition();
+                repaint();
             }
         });
     }
@@ -87,40 +135,69 @@ public class MapPanel extends Canvas {
     // Public Interface Methods
     public void highlightSteps(java.util.List<DirectionStep> steps) {
         this.highlightedSteps = steps;
-        createMapBuffer(); // Recreate the buffer with the highlighted path
         repaint();
     }
 
     public void highlightIntersection(Intersection intersection) {
         this.highlightedIntersection = intersection;
-        createMapBuffer();
         repaint();
     }
 
     public void clearHighlights() {
         this.highlightedSteps = null;
         this.highlightedIntersection = null;
-        createMapBuffer();
         repaint();
     }
 
+    /**
+     * Moves the view by dx, dy pixels, the same as dragging the map that far the other way.
+     */
+    public void panBy(int dx, int dy) {
+        center.x += dx / lonPixels();
+        center.y -= dy / latPixels();
+    }
+
+    /**
+     * Waits for the render thread to draw every tile asked for so far. The panel repaints itself as tiles come in,
+     * this is for benchmarks that paint off screen.
+     */
+    public void awaitTiles() throws InterruptedException {
+        try {
+            RENDERER.submit(() -> {
+            }).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // Tiles cover everything, so there's no need to clear the panel first
+    @Override
+    public void update(Graphics g) {
+        paint(g);
+    }
+
     @Override
     public void paint(Graphics g) {
-        if (mapBuffer == null) {
-            createMapBuffer();
-            updateViewport();
-            bufferScale = actualScale;
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) return;
+        synchronized (tiles) {
+            if (width != tileWidth || height != tileHeight) {
+                // The map is stretched to the panel, so every tile changes with its size
+                tiles.clear();
+                tileWidth = width;
+                tileHeight = height;
+                requested = List.of();
+            }
         }
 
-        // Draw the map from buffer
         Graphics2D g2d = (Graphics2D) g;
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
-                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.setColor(Color.WHITE);
+        g2d.fillRect(0, 0, width, height);
+        drawTiles(g2d);
 
-        g2d.drawImage(mapBuffer,
-                0, 0, getWidth(), getHeight(),
-                viewport.x, viewport.y, viewport.x + viewport.width, viewport.y + viewport.height,
-                null);
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        drawHighlights(g2d);
 
         drawScaleBar(g2d);
 
@@ -176,13 +253,8 @@ public class MapPanel extends Canvas {
     private void handleRightClick(Point clickPoint) {
         if(commandHandler == null) return;
 
-        Point bufferPoint = new Point(
-                clickPoint.x + viewport.x,
-                clickPoint.y + viewport.y
-        );
-
         // First check for intersections
-        Intersection nearestIntersection = findNearestIntersection(bufferPoint);
+        Intersection nearestIntersection = findNearestIntersection(clickPoint);
         if (nearestIntersection != null) {
             commandHandler.echo("\u001B[31m" + "search " + nearestIntersection.intersectionID() + "\u001B[0m");
             commandHandler.handleCommand("search", new String[]{nearestIntersection.intersectionID()});
@@ -190,7 +262,7 @@ public class MapPanel extends Canvas {
         }
 
         // Then check for roads
-        Road nearestRoad = findNearestRoad(bufferPoint);
+        Road nearestRoad = findNearestRoad(clickPoint);
         if (nearestRoad != null) {
             commandHandler.echo("\u001B[31m" + "search road " + nearestRoad.roadID + "\u001B[0m");
             commandHandler.handleCommand("search", new String[]{"road", nearestRoad.roadID});
@@ -198,100 +270,216 @@ public class MapPanel extends Canvas {
     }
 
     // Map Drawing Methods
-    private void createMapBuffer() {
-        int width = getWidth() + 2 * BUFFER_PADDING;
-        int height = getHeight() + 2 * BUFFER_PADDING;
 
-        if (width <= 0 || height <= 0) return;
+    /**
+     * Draws the tiles of the zoom level closest to the current scale that are in view, and asks the render thread
+     * for any that aren't cached yet.
+     */
+    private void drawTiles(Graphics2D g2d) {
+        int zoom = tileZoom();
+        double ratio = actualScale / Math.scalb(1.0, zoom); // screen pixels per tile pixel
+        double left = worldX(center.x, zoom) - getWidth() / 2.0 / ratio;
+        double top = worldY(center.y, zoom) - getHeight() / 2.0 / ratio;
+
+        // Only the tiles that are both in view and on the map
+        long columns = ((long) getWidth() << zoom) / TILE_SIZE + 1;
+        long rows = ((long) getHeight() << zoom) / TILE_SIZE + 1;
+        int firstColumn = (int) Math.max(0, Math.floor(left / TILE_SIZE));
+        int firstRow = (int) Math.max(0, Math.floor(top / TILE_SIZE));
+        int lastColumn = (int) Math.min(columns - 1, Math.floor((left + getWidth() / ratio) / TILE_SIZE));
+        int lastRow = (int) Math.min(rows - 1, Math.floor((top + getHeight() / ratio) / TILE_SIZE));
+
+        List<TileCache.Key> missing = new ArrayList<>();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        for (int row = firstRow; row <= lastRow; row++) {
+            // Both edges of a tile are rounded the same way as its neighbors' so no gaps open between them
+            int y1 = (int) Math.round(((double) row * TILE_SIZE - top) * ratio);
+            int y2 = (int) Math.round(((double) (row + 1) * TILE_SIZE - top) * ratio);
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int x1 = (int) Math.round(((double) column * TILE_SIZE - left) * ratio);
+                int x2 = (int) Math.round(((double) (column + 1) * TILE_SIZE - left) * ratio);
+                TileCache.Key key = new TileCache.Key(zoom, column, row);
+                BufferedImage tile = tiles.get(key);
+                if (tile != null) {
+                    g2d.drawImage(tile, x1, y1, x2, y2, 0, 0, TILE_SIZE, TILE_SIZE, null);
+                } else {
+                    drawPlaceholder(g2d, key, x1, y1, x2, y2);
+                    missing.add(key);
+                }
+            }
+        }
+
+        // The middle of the view first
+        double middleColumn = (left + getWidth() / 2.0 / ratio) / TILE_SIZE - 0.5;
+        double middleRow = (top + getHeight() / 2.0 / ratio) / TILE_SIZE - 0.5;
+        missing.sort(Comparator.comparingDouble(key -> Math.hypot(key.x() - middleColumn, key.y() - middleRow)));
+        requestTiles(missing, getWidth(), getHeight());
+    }
+
+    /**
+     * Fills in for a tile that isn't drawn yet with what's cached of the same spot at other levels: the closest
+     * level up that has it, stretched, then whichever of the four tiles one level down are cached, shrunk, over
+     * that. Those are what was on screen before zooming in or out.
+     */
+    private void drawPlaceholder(Graphics2D g2d, TileCache.Key key, int x1, int y1, int x2, int y2) {
+        for (int up = 1; up <= key.zoom() && TILE_SIZE >> up > 0; up++) {
+            BufferedImage tile = tiles.get(new TileCache.Key(key.zoom() - up, key.x() >> up, key.y() >> up));
+            if (tile != null) {
+                int size = TILE_SIZE >> up;
+                int sx = (key.x() & ((1 << up) - 1)) * size;
+                int sy = (key.y() & ((1 << up) - 1)) * size;
+                g2d.drawImage(tile, x1, y1, x2, y2, sx, sy, sx + size, sy + size, null);
+                break;
+            }
+        }
+
+        if (key.zoom() == MAX_TILE_ZOOM) return;
+        int midX = (x1 + x2) / 2;
+        int midY = (y1 + y2) / 2;
+        for (int quarter = 0; quarter < 4; quarter++) {
+            int dx = quarter & 1;
+            int dy = quarter >> 1;
+            BufferedImage tile = tiles.get(new TileCache.Key(key.zoom() + 1, 2 * key.x() + dx, 2 * key.y() + dy));
+            if (tile != null) {
+                g2d.drawImage(tile, dx == 0 ? x1 : midX, dy == 0 ? y1 : midY, dx == 0 ? midX : x2,
+                        dy == 0 ? midY : y2, 0, 0, TILE_SIZE, TILE_SIZE, null);
+            }
+        }
+    }
+
+    /**
+     * Has the render thread draw the missing tiles, in order, for a panel of width by height, unless the last
+     * request is still going and already covers them. Every tile it finishes goes into the cache and repaints the
+     * panel.
+     */
+    private void requestTiles(List<TileCache.Key> missing, int width, int height) {
+        if (missing.isEmpty()) return;
+        if (finishedRequest != renderRequest.get() && requested.containsAll(missing)) return;
+
+        requested = missing;
+        int request = renderRequest.incrementAndGet();
+        RENDERER.execute(() -> {
+            for (TileCache.Key key : missing) {
+                // The view moved on, a newer request has the tiles it needs now
+                if (renderRequest.get() != request) return;
+                if (tiles.get(key) != null) continue;
+
+                BufferedImage tile = renderTile(key, width, height);
+                synchronized (tiles) {
+                    if (width != tileWidth || height != tileHeight) return;
+                    tiles.put(key, tile);
+                }
+                repaint();
+            }
+            finishedRequest = request;
+        });
+    }
 
-        mapBuffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g2d = mapBuffer.createGraphics();
+    /**
+     * Draws one tile for a panel of width by height: the roads and the named intersections inside it, plus a few
+     * pixels around so anything crossing its edge is drawn the same on both sides. Runs on the render thread, so it
+     * only reads what never changes after the panel's made.
+     */
+    private BufferedImage renderTile(TileCache.Key key, int width, int height) {
+        BufferedImage tile = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = tile.createGraphics();
 
         try {
-            // Set up rendering hints
             g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-            // Clear with background
             g2d.setColor(Color.WHITE);
-            g2d.fillRect(0, 0, width, height);
+            g2d.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+
+            // Tile pixels per degree at this level
+            double xScale = Math.scalb(width / (maxLon - minLon), key.zoom());
+            double yScale = Math.scalb(height / (maxLat - minLat), key.zoom());
+            double originX = (double) key.x() * TILE_SIZE;
+            double originY = (double) key.y() * TILE_SIZE;
+            double west = minLon + (originX - TILE_MARGIN) / xScale;
+            double east = minLon + (originX + TILE_SIZE + TILE_MARGIN) / xScale;
+            double north = maxLat - (originY - TILE_MARGIN) / yScale;
+            double south = maxLat - (originY + TILE_SIZE + TILE_MARGIN) / yScale;
 
-            // Draw all roads first (in gray)
             g2d.setColor(Color.GRAY);
             g2d.setStroke(new BasicStroke(1.0f));
+            spatialIndex.segmentRangeQuery(west, south, east, north, s -> {
+                Intersection from = spatialIndex.segmentFrom(s);
+                Intersection to = spatialIndex.segmentTo(s);
+                g2d.drawLine(tileX(from.longitude(), xScale, originX), tileY(from.latitude(), yScale, originY),
+                        tileX(to.longitude(), xScale, originX), tileY(to.latitude(), yScale, originY));
+            });
+
+            // Numbered intersections are left out, the highlighted one is drawn over the tiles
+            g2d.setColor(Color.BLACK);
+            spatialIndex.rangeQuery(west, south, east, north, v -> {
+                Intersection intersection = spatialIndex.vertex(v);
+                if (NUMBERED_INTERSECTION.matcher(intersection.intersectionID()).matches()) return;
+
+                int x = tileX(intersection.longitude(), xScale, originX);
+                int y = tileY(intersection.latitude(), yScale, originY);
+                g2d.fillOval(x - DOT_SIZE/2, y - DOT_SIZE/2, DOT_SIZE, DOT_SIZE);
+            });
+        } finally {
+            g2d.dispose();
+        }
+        return tile;
+    }
 
-            for (HashTable.Entry<Intersection, Intersection> edge : streetGraph.getEdges()) {
-                Intersection from = edge.getKey();
-                Intersection to = edge.getValue();
-                Point fromPoint = geoToBuffer(from.longitude(), from.latitude());
-                Point toPoint = geoToBuffer(to.longitude(), to.latitude());
-                g2d.drawLine(fromPoint.x, fromPoint.y, toPoint.x, toPoint.y);
-            }
+    // Floored in world pixels before moving to the tile, so every tile rounds a point the same way
+    private int tileX(double lon, double xScale, double originX) {
+        return (int) (Math.floor((lon - minLon) * xScale) - originX);
+    }
 
-            // Draw highlighted path if available
-            if (highlightedSteps != null && !highlightedSteps.isEmpty()) {
-                // Draw the highlighted path
-                g2d.setStroke(new BasicStroke(HIGHLIGHT_WIDTH,
-                        BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-                g2d.setColor(HIGHLIGHT_COLOR);
-
-                for (DirectionStep step : highlightedSteps) {
-                    Point fromPoint = geoToBuffer(step.from.longitude(), step.from.latitude());
-                    Point toPoint = geoToBuffer(step.to.longitude(), step.to.latitude());
-                    g2d.drawLine(fromPoint.x, fromPoint.y, toPoint.x, toPoint.y);
-                }
+    private int tileY(double lat, double yScale, double originY) {
+        return (int) (Math.floor((maxLat - lat) * yScale) - originY);
+    }
 
-                // Draw start and end markers
-                DirectionStep firstStep = highlightedSteps.getFirst();
-                DirectionStep lastStep = highlightedSteps.getLast();
-
-                drawMarker(g2d, firstStep.from, Color.GREEN, "S");  // Start marker
-                drawMarker(g2d, lastStep.to, Color.RED, "E");      // End marker
-
-                // Draw step numbers
-                g2d.setColor(Color.BLACK);
-                for (DirectionStep step : highlightedSteps) {
-                    Point midPoint = getMidPoint(
-                            geoToBuffer(step.from.longitude(), step.from.latitude()),
-                            geoToBuffer(step.to.longitude(), step.to.latitude())
-                    );
-                    if(highlightedSteps.size() < 20) drawStepNumber(g2d, midPoint, step.stepNumber);
-                }
+    /**
+     * Draws the highlighted route and intersection straight onto the panel.
+     */
+    private void drawHighlights(Graphics2D g2d) {
+        if (highlightedSteps != null && !highlightedSteps.isEmpty()) {
+            // Draw the highlighted path
+            g2d.setStroke(new BasicStroke(HIGHLIGHT_WIDTH,
+                    BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            g2d.setColor(HIGHLIGHT_COLOR);
+
+            for (DirectionStep step : highlightedSteps) {
+                Point fromPoint = geoToScreen(step.from.longitude(), step.from.latitude());
+                Point toPoint = geoToScreen(step.to.longitude(), step.to.latitude());
+                g2d.drawLine(fromPoint.x, fromPoint.y, toPoint.x, toPoint.y);
             }
 
-            // Draw intersections
-            g2d.setColor(Color.BLACK);
-            int dotSize = 4;
-
-            for (Intersection intersection : streetGraph) {
-                // Skip numbered intersections unless specifically highlighted
-                if (intersection.intersectionID().matches("i\\d+$") &&
-                        (!intersection.equals(highlightedIntersection))) {
-                    continue;
-                }
-
-                Point p = geoToBuffer(intersection.longitude(), intersection.latitude());
+            // Draw start and end markers
+            DirectionStep firstStep = highlightedSteps.getFirst();
+            DirectionStep lastStep = highlightedSteps.getLast();
 
-                // Highlight the specific intersection if requested
-                if (intersection.equals(highlightedIntersection)) {
-                    g2d.setColor(HIGHLIGHT_COLOR);
-                    g2d.fillOval(p.x - dotSize, p.y - dotSize, dotSize * 2, dotSize * 2);
+            drawMarker(g2d, firstStep.from, Color.GREEN, "S");  // Start marker
+            drawMarker(g2d, lastStep.to, Color.RED, "E");      // End marker
 
-                    // Draw the intersection ID
-                    drawLabel(g2d, p, intersection.intersectionID());
-
-                    g2d.setColor(Color.BLACK);
-                } else {
-                    g2d.fillOval(p.x - dotSize/2, p.y - dotSize/2, dotSize, dotSize);
-                }
+            // Draw step numbers
+            g2d.setColor(Color.BLACK);
+            for (DirectionStep step : highlightedSteps) {
+                Point midPoint = getMidPoint(
+                        geoToScreen(step.from.longitude(), step.from.latitude()),
+                        geoToScreen(step.to.longitude(), step.to.latitude())
+                );
+                if(highlightedSteps.size() < 20) drawStepNumber(g2d, midPoint, step.stepNumber);
             }
+        }
 
-        } finally {
-            g2d.dispose();
+        // Highlight the specific intersection if requested
+        if (highlightedIntersection != null) {
+            Point p = geoToScreen(highlightedIntersection.longitude(), highlightedIntersection.latitude());
+            g2d.setColor(HIGHLIGHT_COLOR);
+            g2d.fillOval(p.x - DOT_SIZE, p.y - DOT_SIZE, DOT_SIZE * 2, DOT_SIZE * 2);
+
+            // Draw the intersection ID
+            drawLabel(g2d, p, highlightedIntersection.intersectionID());
         }
     }
 
     private void drawMarker(Graphics2D g2d, Intersection intersection, Color color, String label) {
-        Point p = geoToBuffer(intersection.longitude(), intersection.latitude());
+        Point p = geoToScreen(intersection.longitude(), intersection.latitude());
         int size = 12;
 
         g2d.setColor(color);
@@ -346,10 +534,8 @@ public class MapPanel extends Canvas {
         int y = getHeight() - margin;
 
         // Calculate the geographic coordinates for two points
-        double[] leftPoint = bufferToGeo(viewport.x + getWidth() - targetBarLength - margin,
-                viewport.y + y);
-        double[] rightPoint = bufferToGeo(viewport.x + getWidth() - margin,
-                viewport.y + y);
+        double[] leftPoint = screenToGeo(getWidth() - targetBarLength - margin, y);
+        double[] rightPoint = screenToGeo(getWidth() - margin, y);
 
         // Calculate the actual distance in meters
         Intersection il = new Intersection("il", leftPoint[0], leftPoint[1]);
@@ -434,36 +620,54 @@ public class MapPanel extends Canvas {
         );
     }
 
-    private void updateViewport() {
-        viewport.setSize(getWidth(), getHeight());
-        viewport.setLocation(BUFFER_PADDING, BUFFER_PADDING);
-    }
-
     // Coordinate Conversion and Map Position Methods
 
-    private Point geoToBuffer(double lon, double lat) {
-        double geoWidth = (maxLon - minLon) / actualScale;
-        double geoHeight = (maxLat - minLat) / actualScale;
+    /**
+     * @return screen pixels per degree of longitude at the current scale, the whole map's width fills the panel at
+     *         scale 1
+     */
+    private double lonPixels() {
+        return lonPixels(actualScale);
+    }
 
-        int bufferWidth = mapBuffer.getWidth() - 2 * BUFFER_PADDING;
-        int bufferHeight = mapBuffer.getHeight() - 2 * BUFFER_PADDING;
+    private double lonPixels(double scale) {
+        return getWidth() * scale / (maxLon - minLon);
+    }
 
-        int x = (int)((lon - (center.x - geoWidth/2)) * bufferWidth / geoWidth) + BUFFER_PADDING;
-        int y = (int)(((center.y + geoHeight/2) - lat) * bufferHeight / geoHeight) + BUFFER_PADDING;
+    private double latPixels() {
+        return latPixels(actualScale);
+    }
 
-        return new Point(x, y);
+    private double latPixels(double scale) {
+        return getHeight() * scale / (maxLat - minLat);
     }
 
-    private double[] bufferToGeo(int bufferX, int bufferY) {
-        double geoWidth = (maxLon - minLon) / actualScale;
-        double geoHeight = (maxLat - minLat) / actualScale;
+    /**
+     * @return the tile zoom level closest to the current scale
+     */
+    private int tileZoom() {
+        int zoom = (int) Math.round(Math.log(actualScale) / Math.log(2));
+        return Math.max(0, Math.min(MAX_TILE_ZOOM, zoom));
+    }
 
-        int bufferWidth = mapBuffer.getWidth() - 2 * BUFFER_PADDING;
-        int bufferHeight = mapBuffer.getHeight() - 2 * BUFFER_PADDING;
+    // Where a point is in the whole map drawn at a zoom level, in tile pixels from its top left corner
+    private double worldX(double lon, int zoom) {
+        return Math.scalb((lon - minLon) * lonPixels(1), zoom);
+    }
 
-        double lon = ((bufferX - BUFFER_PADDING) * geoWidth / bufferWidth) + (center.x - geoWidth/2);
-        double lat = (center.y + geoHeight/2) - ((bufferY - BUFFER_PADDING) * geoHeight / bufferHeight);
+    private double worldY(double lat, int zoom) {
+        return Math.scalb((maxLat - lat) * latPixels(1), zoom);
+    }
+
+    private Point geoToScreen(double lon, double lat) {
+        return new Point(
+                (int) Math.round((lon - center.x) * lonPixels() + getWidth() / 2.0),
+                (int) Math.round((center.y - lat) * latPixels() + getHeight() / 2.0));
+    }
 
+    private double[] screenToGeo(int x, int y) {
+        double lon = center.x + (x - getWidth() / 2.0) / lonPixels();
+        double lat = center.y - (y - getHeight() / 2.0) / latPixels();
         return new double[]{lon, lat};
     }
 
@@ -502,100 +706,20 @@ public class MapPanel extends Canvas {
 
     private void updateMapPosition(Point currentPos) {
         if (lastMousePos != null) {
-            int dx = currentPos.x - lastMousePos.x;
-            int dy = currentPos.y - lastMousePos.y;
-
-            // Update viewport position
-            viewport.translate(-dx, -dy);
-
-            // Check if we need to recreate the buffer
-            if (needsBufferUpdate()) {
-                double[] centerGeo = bufferToGeo(
-                        viewport.x + viewport.width/2,
-                        viewport.y + viewport.height/2
-                );
-                center.x = centerGeo[0];
-                center.y = centerGeo[1];
-                createMapBuffer();
-                updateViewport();
-            }
+            panBy(lastMousePos.x - currentPos.x, lastMousePos.y - currentPos.y);
         }
         lastMousePos = currentPos;
     }
 
-    private void zoom(double factor) {
-        double newScale = actualScale * factor;
-
-        // Check max zoom constraint
-        if (newScale < MIN_ZOOM) {
-            newScale = MIN_ZOOM;
-            factor = MIN_ZOOM / actualScale;
-            if (factor == 1.0) return;
-        }
-
-        // Get the current viewport center in geographic coordinates
-        Point viewportCenter = new Point(
-                viewport.x + viewport.width / 2,
-                viewport.y + viewport.height / 2
-        );
-        double[] centerGeo = bufferToGeo(viewportCenter.x, viewportCenter.y);
-
-        // Store the old scale for ratio calculations
-        double oldScale = actualScale;
-
-        // Update scale
-        actualScale = newScale;
-
-        boolean needNewBuffer = bufferScale / actualScale < MIN_QUALITY_THRESHOLD ||
-                bufferScale / actualScale > MAX_QUALITY_THRESHOLD;
-
-        if (needNewBuffer) {
-            // Update the map center to the viewport center
-            center.x = centerGeo[0];
-            center.y = centerGeo[1];
-
-            // Update buffer scale AFTER storing center
-            bufferScale = actualScale;
-
-            // Create new buffer with updated scale and center
-            createMapBuffer();
-
-            // Reset viewport to default size
-            viewport.width = getWidth();
-            viewport.height = getHeight();
-
-            // Position viewport at the buffer center
-            viewport.x = BUFFER_PADDING;
-            viewport.y = BUFFER_PADDING;
-        } else {
-            // For non-rebuffer zooms, scale the viewport around its center
-            int oldWidth = viewport.width;
-            int oldHeight = viewport.height;
-            viewport.width = (int)(viewport.width / factor);
-            viewport.height = (int)(viewport.height / factor);
-            viewport.x += (oldWidth - viewport.width) / 2;
-            viewport.y += (oldHeight - viewport.height) / 2;
-        }
-
+    /**
+     * Zooms in by factor, or out if it's below 1, around the middle of the panel, the same as turning the mouse wheel.
+     */
+    public void zoom(double factor) {
+        // The middle of the panel is the center, so only the scale changes
+        actualScale = Math.max(MIN_ZOOM, actualScale * factor);
         constrainCenter();
     }
 
-    private boolean needsBufferUpdate() {
-        // Check if the viewport is getting too close to the buffer edges
-        int threshold = BUFFER_PADDING / 2;
-
-        // Also check if the quality ratio is outside acceptable bounds
-        double qualityRatio = bufferScale / actualScale;
-        boolean qualityIssue = qualityRatio < MIN_QUALITY_THRESHOLD ||
-                qualityRatio > MAX_QUALITY_THRESHOLD;
-
-        return qualityIssue ||
-                viewport.x < threshold ||
-                viewport.y < threshold ||
-                viewport.x + viewport.width > mapBuffer.getWidth() - threshold ||
-                viewport.y + viewport.height > mapBuffer.getHeight() - threshold;
-    }
-
     private void constrainCenter() {
         if(actualScale > 2) return; //this doesn't really work when zoomed in a bunch
 
@@ -618,65 +742,29 @@ public class MapPanel extends Canvas {
         // Reset to initial values
         clearHighlights();
         actualScale = initialScale;
-        bufferScale = initialScale;
         center = new Point2D.Double(initialCenter.x, initialCenter.y);
-        createMapBuffer();
-        updateViewport();
     }
 
     // Search Methods
-    private Intersection findNearestIntersection(Point bufferPoint) {
-        Intersection nearest = null;
-        double minDistance = CLICK_TOLERANCE;
-
-        for (Intersection intersection : streetGraph) {
-            Point p = geoToBuffer(intersection.longitude(), intersection.latitude());
-            double distance = bufferPoint.distance(p);
-
-            if (distance < minDistance) {
-                minDistance = distance;
-                nearest = intersection;
-            }
-        }
-
-        return nearest;
+    private Intersection findNearestIntersection(Point clickPoint) {
+        double[] geo = screenToGeo(clickPoint.x, clickPoint.y);
+        int v = spatialIndex.nearestVertex(geo[0], geo[1], clickTolerance(clickPoint));
+        return v < 0 ? null : spatialIndex.vertex(v);
     }
 
-    private Road findNearestRoad(Point bufferPoint) {
-        Road nearest = null;
-        double minDistance = CLICK_TOLERANCE;
-
-        for (HashTable.Entry<Intersection, Intersection> edge : streetGraph.getEdges()) {
-            Intersection from = edge.getKey();
-            Intersection to = edge.getValue();
-            Road road = streetGraph.get(from, to);
-
-            Point p1 = geoToBuffer(from.longitude(), from.latitude());
-            Point p2 = geoToBuffer(to.longitude(), to.latitude());
-
-            double distance = distanceToSegment(bufferPoint, p1, p2);
-            if (distance < minDistance) {
-                minDistance = distance;
-                nearest = road;
-            }
-        }
-
-        return nearest;
+    private Road findNearestRoad(Point clickPoint) {
+        double[] geo = screenToGeo(clickPoint.x, clickPoint.y);
+        int s = spatialIndex.nearestSegment(geo[0], geo[1], clickTolerance(clickPoint));
+        return s < 0 ? null : spatialIndex.segmentRoad(s);
     }
 
-    private double distanceToSegment(Point p, Point start, Point end) {
-        double l2 = start.distanceSq(end);
-        if (l2 == 0) return p.distance(start);
-
-        double t = ((p.x - start.x) * (end.x - start.x) +
-                (p.y - start.y) * (end.y - start.y)) / l2;
-
-        if (t < 0) return p.distance(start);
-        if (t > 1) return p.distance(end);
-
-        return p.distance(new Point(
-                (int)(start.x + t * (end.x - start.x)),
-                (int)(start.y + t * (end.y - start.y))
-        ));
+    /**
+     * @return CLICK_TOLERANCE pixels in meters, measured north-south since that's the longer way on the screen
+     */
+    private double clickTolerance(Point clickPoint) {
+        double[] click = screenToGeo(clickPoint.x, clickPoint.y);
+        double[] below = screenToGeo(clickPoint.x, clickPoint.y + CLICK_TOLERANCE);
+        return Helpers.estimateDistance(new Intersection("click", click[0], click[1]),
+                new Intersection("below", below[0], below[1]));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,68 @@
+package abruzese.gui;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The map tiles MapPanel has drawn, keyed by zoom level and tile column and row. It keeps the most recently used
+ * tiles up to a memory budget and drops the least recently used ones once it goes over.
+ * <p>
+ * Every method locks the cache, since tiles are put in by MapPanel's render thread while paint reads them.
+ */
+class TileCache {
+    record Key(int zoom, int x, int y) {
+    }
+
+    // Access order, so iterating starts at the tile that's gone longest without being used
+    private final LinkedHashMap<Key, BufferedImage> tiles = new LinkedHashMap<>(64, 0.75f, true);
+    private final long budget;
+    private long bytes;
+
+    /**
+     * @param budget the most bytes of pixels to keep
+     */
+    TileCache(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * @return the tile, or null if it hasn't been drawn or was dropped
+     */
+    synchronized BufferedImage get(Key key) {
+        return tiles.get(key);
+    }
+
+    synchronized void put(Key key, BufferedImage tile) {
+        BufferedImage old = tiles.put(key, tile);
+        if (old != null) bytes -= bytesOf(old);
+        bytes += bytesOf(tile);
+
+        // Never drops the tile just added, even if it's bigger than the whole budget
+        Iterator<Map.Entry<Key, BufferedImage>> eldest = tiles.entrySet().iterator();
+        while (bytes > budget && tiles.size() > 1) {
+            BufferedImage dropped = eldest.next().getValue();
+            eldest.remove();
+            bytes -= bytesOf(dropped);
+        }
+    }
+
+    synchronized void clear() {
+        tiles.clear();
+        bytes = 0;
+    }
+
+    synchronized int size() {
+        return tiles.size();
+    }
+
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    // Tiles are TYPE_INT_RGB, 4 bytes a pixel
+    private static long bytesOf(BufferedImage tile) {
+        return 4L * tile.getWidth() * tile.getHeight();
+    }
+}
@@ -1,6 +1,5 @@
 package abruzese.hashtable;
 
-import java.nio.ByteBuffer;
 import java.util.Random;
 
 /**
@@ -11,50 +10,52 @@ import java.util.Random;
  Collision rate about equivalent to randomly generated numbers.
  Fast computation in O(1)
  Follows the object equivalence properties of key.hashcode()
+
+ The table used to be a byte[256][256][4] and the key was split into bytes with ByteBuffers. It's now one flat
+ int[65536] indexed by the two bytes put together, with the 4 random bytes of each entry packed into one int, so
+ hashing is a couple of shifts and two array reads. The output is exactly the same as before.
  */
 public class FAH4a {
     protected static final long seed = 690;
-    private static byte[][][] T;
+    private static volatile int[] T;
 
     //Provides lazy evaluation of T
-    private static byte[][][] getT() {
-        if(T != null) return T;
-
-        Random gen = new Random(seed);
-        T = new byte[1 << 8][1 << 8][4]; //256x256
-
-        for (byte[][] row : T) {
-            for (byte[] num : row) {
-                gen.nextBytes(num);
+    private static int[] getT() {
+        int[] table = T;
+        if (table != null) return table;
+
+        synchronized (FAH4a.class) {
+            table = T;
+            if (table == null) {
+                //Filled in the same order with the same random bytes as the old 256x256x4 table, the entry for
+                //bytes (y, x) is at y * 256 + x with its first byte in the top 8 bits
+                Random gen = new Random(seed);
+                byte[] num = new byte[4];
+                table = new int[1 << 16];
+                for (int i = 0; i < table.length; i++) {
+                    gen.nextBytes(num);
+                    table[i] = (num[0] & 0xff) << 24 | (num[1] & 0xff) << 16 | (num[2] & 0xff) << 8 | (num[3] & 0xff);
+                }
+                //Only published once it's complete so no thread can hash with a half filled table
+                T = table;
             }
         }
-
-        return T;
+        return table;
     }
 
     public static int hash(Object key) {
-        byte[] h = new byte[4]; //This is the size of an int
-
-        byte[] chunks = ByteBuffer.allocate(4) //size of the int that we're hashing
-                .putInt(key.hashCode())
-                .array();
-
-        for(int i = 0; i < chunks.length; i+=2) {
-            byte x = chunks[i];
-            byte y = chunks[i+1];
-
-            //This maintains the data from the previous chunks
-            x ^= h[0];
-            y ^= h[1];
-
-            byte[] tval = getT()[y & 0xff][x & 0xff]; //ensure positive numbers
-
-            //xor the two ints together
-            for(int c = 0; c < 4; c++)
-                h[c] ^= tval[c];
-        }
-
-        return ByteBuffer.wrap(h).getInt();
+        int[] table = getT();
+        int code = key.hashCode();
+
+        //The int is hashed as two chunks of two bytes, most significant byte first
+        int x = code >>> 24;
+        int y = (code >>> 16) & 0xff;
+        int h = table[y << 8 | x];
+
+        //This maintains the data from the previous chunks
+        x = ((code >>> 8) & 0xff) ^ (h >>> 24);
+        y = (code & 0xff) ^ ((h >>> 16) & 0xff);
+        return h ^ table[y << 8 | x];
     }
 
     /**
@@ -65,4 +66,4 @@ public class FAH4a {
         T = null;
         System.gc();
     }
-}
\ No newline at end of file
+}
@@ -1,45 +1,75 @@
 package abruzese.hashtable;
 
 import java.util.*;
+import java.util.function.BiConsumer;
 
 /**
  * I had to switch this hashtable to chaining for efficiency from the original project, not too difficult considering
  * I had written one similar in kotlin last year.
+ * <p>
+ * It's since moved on again to open addressing with linear probing: the keys, values and hashes live in three
+ * parallel arrays, so a lookup is a few array reads next to each other instead of chasing a bucket object and a
+ * LinkedList. Removing shifts the entries after the removed one back into the hole (backward shift deletion) rather
+ * than leaving tombstones, so lookups never slow down after lots of removes.
+ * <p>
+ * The index comes from key.hashCode() run through a few shifts and multiplies (the murmur3 finalizer), which spreads
+ * the bits as well as FAH4a without allocating anything. The old chained version is kept as {@link ChainedHashTable}.
+ * <p>
+ * Keys can't be null, a null key slot is how an empty slot is marked.
  */
 public class HashTable<K, V> {
     private static final int DEFAULT_CAPACITY = 16;
     private static final float LOAD_FACTOR = 0.75f;
-    private Bucket<K, V>[] table;
+    private Object[] keys;
+    private Object[] values;
+    private int[] hashes;
     private int size;
+    private int threshold;
+    private int modCount; // changes whenever a key is added or removed, so iterators can tell
 
     public HashTable() {
         this(DEFAULT_CAPACITY);
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * @param initialCapacity the number of slots to start with, rounded up to a power of two
+     */
     public HashTable(int initialCapacity) {
-        table = new Bucket[initialCapacity];
+        if (initialCapacity < 0) throw new IllegalArgumentException("Capacity cannot be negative");
+        int capacity = Integer.highestOneBit(Math.max(2, initialCapacity) - 1) << 1;
+        allocate(capacity);
         size = 0;
     }
 
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        hashes = new int[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
     public V put(K key, V value) {
-        int index = indexFor(key);
-        if (table[index] == null) {
-            table[index] = new Bucket<>();
-        }
+        int hash = hash(key);
+        int mask = keys.length - 1;
+        int index = hash & mask;
 
-        for (Entry<K, V> entry : table[index].entries) {
-            if (Objects.equals(entry.key, key)) {
-                V oldValue = entry.value;
-                entry.value = value;
+        Object existing;
+        while ((existing = keys[index]) != null) {
+            if (hashes[index] == hash && existing.equals(key)) {
+                V oldValue = valueAt(index);
+                values[index] = value;
                 return oldValue;
             }
+            index = (index + 1) & mask;
         }
 
-        table[index].entries.add(new Entry<>(key, value));
+        keys[index] = key;
+        values[index] = value;
+        hashes[index] = hash;
         size++;
+        modCount++;
 
-        if (size >= LOAD_FACTOR * table.length) {
+        if (size >= threshold) {
             resize();
         }
         return null;
@@ -62,17 +92,8 @@ public class HashTable<K, V> {
     }
 
     public V get(K key) {
-        int index = indexFor(key);
-        if (table[index] == null) {
-            return null;
-        }
-
-        for (Entry<K, V> entry : table[index].entries) {
-            if (Objects.equals(entry.key, key)) {
-                return entry.value;
-            }
-        }
-        return null;
+        int index = indexOf(key);
+        return index < 0 ? null : valueAt(index);
     }
 
     /**
@@ -91,21 +112,20 @@ public class HashTable<K, V> {
      * @return the previous value associated with the key, or null if there was no mapping
      */
     public V remove(K key) {
-        int index = indexFor(key);
-        if (table[index] == null) {
+        int index = indexOf(key);
+        if (index < 0) {
             return null;
         }
 
-        Iterator<Entry<K, V>> iterator = table[index].entries.iterator();
-        while (iterator.hasNext()) {
-            Entry<K, V> entry = iterator.next();
-            if (Objects.equals(entry.key, key)) {
-                iterator.remove();
-                size--;
-                return entry.value;
-            }
-        }
-        return null;
+        return removeAt(index);
+    }
+
+    private V removeAt(int index) {
+        V oldValue = valueAt(index);
+        deleteSlot(index);
+        size--;
+        modCount++;
+        return oldValue;
     }
 
     public int size() {
@@ -117,46 +137,135 @@ public class HashTable<K, V> {
     }
 
     /**
-     * Returns a collection view of the values contained in this map.
+     * Returns a live view of the values contained in this map. It reads straight from the table rather than
+     * copying it, so it reflects later changes, and its iterator throws ConcurrentModificationException if keys are
+     * added or removed while iterating.
      */
     public Collection<V> values() {
-        List<V> values = new ArrayList<>();
-        for (Bucket<K, V> bucket : table) {
-            if (bucket != null) {
-                for (Entry<K, V> entry : bucket.entries) {
-                    values.add(entry.value);
-                }
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new TableIterator<>() {
+                    @Override
+                    V at(int index) {
+                        return valueAt(index);
+                    }
+                };
             }
-        }
-        return values;
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public void clear() {
+                HashTable.this.clear();
+            }
+        };
     }
 
     /**
-     * Returns a set of keys contained in this map.
+     * Returns a live view of the keys contained in this map, see {@link #values()}.
      */
     public Set<K> keySet() {
-        Set<K> keys = new HashSet<>(); //shhh this doesn't count as using a util's hashtable it's a hashset
-        for (Bucket<K, V> bucket : table) {
-            if (bucket != null) {
-                for (Entry<K, V> entry : bucket.entries) {
-                    keys.add(entry.key);
-                }
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<K> iterator() {
+                return new TableIterator<>() {
+                    @Override
+                    K at(int index) {
+                        return keyAt(index);
+                    }
+                };
             }
-        }
-        return keys;
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o != null && indexOf(o) >= 0;
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                if (o == null) return false;
+                int index = indexOf(o);
+                if (index < 0) return false;
+                removeAt(index);
+                return true;
+            }
+
+            @Override
+            public void clear() {
+                HashTable.this.clear();
+            }
+        };
     }
 
     /**
-     * Returns a set of entries contained in this map.
+     * Returns a live view of the entries contained in this map, see {@link #values()}. Every entry handed out is a
+     * snapshot of that key and value.
      */
     public Set<Entry<K, V>> entrySet() {
-        Set<Entry<K, V>> entries = new HashSet<>();
-        for (Bucket<K, V> bucket : table) {
-            if (bucket != null) {
-                entries.addAll(bucket.entries);
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new TableIterator<>() {
+                    @Override
+                    Entry<K, V> at(int index) {
+                        return new Entry<>(keyAt(index), valueAt(index));
+                    }
+                };
             }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public void clear() {
+                HashTable.this.clear();
+            }
+        };
+    }
+
+    /**
+     * Walks the occupied slots in table order. Removing through the iterator isn't supported since backward shift
+     * deletion can move an entry the iterator has already passed into a slot it hasn't reached yet.
+     */
+    private abstract class TableIterator<T> implements Iterator<T> {
+        private final Object[] table = keys;
+        private final int expectedModCount = modCount;
+        private int next = advance(0);
+
+        private int advance(int index) {
+            while (index < table.length && table[index] == null) {
+                index++;
+            }
+            return index;
+        }
+
+        abstract T at(int index);
+
+        @Override
+        public boolean hasNext() {
+            return next < table.length;
+        }
+
+        @Override
+        public T next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (next >= table.length) throw new NoSuchElementException();
+
+            T result = at(next);
+            next = advance(next + 1);
+            return result;
         }
-        return entries;
     }
 
     public boolean containsKey(K key) {
@@ -164,32 +273,130 @@ public class HashTable<K, V> {
     }
 
     public void clear() {
-        Arrays.fill(table, null);
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
         size = 0;
+        modCount++;
+    }
+
+    /**
+     * Spreads the bits of key.hashCode() so keys whose hash codes only differ in the high bits still land in
+     * different slots.
+     */
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * @return the slot holding key, or -1 if it isn't in the table
+     */
+    private int indexOf(Object key) {
+        int hash = hash(key);
+        int mask = keys.length - 1;
+        int index = hash & mask;
+
+        Object existing;
+        while ((existing = keys[index]) != null) {
+            if (hashes[index] == hash && existing.equals(key)) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
     }
 
-    private int indexFor(K key) {
-        return FAH4a.hash(key) & (table.length - 1);
+    /**
+     * Calls action with every key and value in table order, without making an Entry for each one.
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Object[] table = keys;
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] != null) action.accept(keyAt(i), valueAt(i));
+        }
+    }
+
+    /**
+     * Finds the next occupied slot, for walking the table without allocating when a callback won't do (like a
+     * cursor that hands out one entry at a time). Start from 0 and pass the last slot plus one each time after
+     * that. The slots move around whenever a key is added or removed, so the table mustn't change during a walk.
+     *
+     * @return the first occupied slot at or after slot, or -1 if there are no more
+     */
+    public int nextSlot(int slot) {
+        Object[] table = keys;
+        for (int i = slot; i < table.length; i++) {
+            if (table[i] != null) return i;
+        }
+        return -1;
     }
 
+    /**
+     * @return the key in an occupied slot from {@link #nextSlot(int)}
+     */
+    @SuppressWarnings("unchecked")
+    public K keyAt(int slot) {
+        return (K) keys[slot];
+    }
 
+    /**
+     * @return the value in an occupied slot from {@link #nextSlot(int)}
+     */
     @SuppressWarnings("unchecked")
-    private void resize() {
-        Bucket<K, V>[] oldTable = table;
-        table = new Bucket[oldTable.length * 2];
-        size = 0;
+    public V valueAt(int slot) {
+        return (V) values[slot];
+    }
 
-        for (Bucket<K, V> bucket : oldTable) {
-            if (bucket != null) {
-                for (Entry<K, V> entry : bucket.entries) {
-                    put(entry.key, entry.value);
-                }
+    /**
+     * Empties a slot, then walks the rest of its probe run moving back every entry that would no longer be found
+     * past the gap.
+     */
+    private void deleteSlot(int hole) {
+        int mask = keys.length - 1;
+        int index = hole;
+        while (true) {
+            index = (index + 1) & mask;
+            if (keys[index] == null) {
+                break;
+            }
+
+            // An entry can fill the hole if the hole sits between its home slot and where it is now
+            int home = hashes[index] & mask;
+            if (((index - home) & mask) >= ((index - hole) & mask)) {
+                keys[hole] = keys[index];
+                values[hole] = values[index];
+                hashes[hole] = hashes[index];
+                hole = index;
             }
         }
+        keys[hole] = null;
+        values[hole] = null;
     }
 
-    private static class Bucket<K, V> {
-        List<Entry<K, V>> entries = new LinkedList<>();
+    private void resize() {
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        int[] oldHashes = hashes;
+        allocate(oldKeys.length * 2);
+
+        // The hashes are stored so nothing needs rehashing, and no key can already be present
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int index = oldHashes[i] & mask;
+                while (keys[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+                hashes[index] = oldHashes[i];
+            }
+        }
     }
 
     public static class Entry<K, V> {
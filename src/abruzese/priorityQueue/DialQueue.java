@@ -0,0 +1,193 @@
+package abruzese.priorityQueue;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A bucket queue for Dial's algorithm: Dijkstra's algorithm over whole number edge weights no bigger than some C.
+ * <p>
+ * While Dijkstra settles a vertex at distance d everything in the frontier is between d and d + C, so C + 1
+ * buckets used round robin are enough to give every possible priority its own bucket. Each bucket is a doubly
+ * linked list threaded through int arrays indexed by id, so add and decreaseKey are O(1) and poll only has to
+ * step the cursor forward past empty buckets, which is O(1) amortized over a search since the cursor never moves
+ * back.
+ * <p>
+ * Priorities have to be whole numbers, and like Dijkstra's they can never be lower than the last one polled or
+ * more than maxGap above it. Anything else throws an IllegalArgumentException.
+ */
+public class DialQueue implements IntPriorityQueue {
+    private final int maxGap;
+    private final int[] heads; // first id in each bucket, -1 if empty
+    private int[] next;
+    private int[] prev;
+    private int[] bucketOf; // bucket of each id, -1 if absent
+    private long cursor; // no priority in the queue is below this
+    private int size;
+
+    /**
+     * @param maxGap the largest difference between a priority and the smallest one in the queue, for Dijkstra
+     *               that is the largest edge weight
+     * @param capacity the number of ids to make room for
+     */
+    public DialQueue(int maxGap, int capacity) {
+        if (maxGap < 0) throw new IllegalArgumentException("Max gap cannot be negative");
+        if (capacity < 0) throw new IllegalArgumentException("Capacity cannot be negative");
+        this.maxGap = maxGap;
+        this.heads = new int[maxGap + 1];
+        Arrays.fill(heads, -1);
+        this.next = new int[capacity];
+        this.prev = new int[capacity];
+        this.bucketOf = new int[capacity];
+        Arrays.fill(bucketOf, -1);
+        this.cursor = 0;
+        this.size = 0;
+    }
+
+    public int getMaxGap() {
+        return maxGap;
+    }
+
+    @Override
+    public void ensureCapacity(int capacity) {
+        if (capacity <= bucketOf.length) return;
+
+        int oldCapacity = bucketOf.length;
+        next = Arrays.copyOf(next, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        bucketOf = Arrays.copyOf(bucketOf, capacity);
+        Arrays.fill(bucketOf, oldCapacity, capacity, -1);
+    }
+
+    @Override
+    public void add(int id, double priority) {
+        if (bucketOf[id] >= 0) throw new IllegalArgumentException("Id already in queue: " + id);
+
+        long key = toKey(priority);
+        // An empty queue can move the cursor anywhere. It's only moved if it has to be though, since right after
+        // Dijkstra polls the last vertex it adds neighbours that are anywhere from the polled distance upwards
+        if (size == 0 && (key < cursor || key - cursor > maxGap)) cursor = key;
+        link(id, bucketFor(key));
+        size++;
+    }
+
+    @Override
+    public void decreaseKey(int id, double priority) {
+        if (bucketOf[id] < 0) throw new NoSuchElementException("Id not in queue: " + id);
+
+        int bucket = bucketFor(toKey(priority));
+        unlink(id);
+        link(id, bucket);
+    }
+
+    @Override
+    public void addOrDecrease(int id, double priority) {
+        if (bucketOf[id] >= 0) {
+            decreaseKey(id, priority);
+        } else {
+            add(id, priority);
+        }
+    }
+
+    @Override
+    public int poll() {
+        int id = heads[firstBucket()];
+        unlink(id);
+        size--;
+        return id;
+    }
+
+    @Override
+    public int peek() {
+        return heads[firstBucket()];
+    }
+
+    @Override
+    public double peekPriority() {
+        firstBucket();
+        return cursor;
+    }
+
+    /**
+     * Moves the cursor up to the smallest priority in the queue.
+     *
+     * @return the bucket that priority lives in
+     */
+    private int firstBucket() {
+        if (size == 0) throw new NoSuchElementException("Priority queue is empty");
+
+        int bucket = (int) (cursor % heads.length);
+        while (heads[bucket] < 0) {
+            cursor++;
+            if (++bucket == heads.length) bucket = 0;
+        }
+        return bucket;
+    }
+
+    private static long toKey(double priority) {
+        if (priority < 0 || priority != Math.rint(priority) || priority >= Long.MAX_VALUE) {
+            throw new IllegalArgumentException("Priority must be a non negative whole number: " + priority);
+        }
+        return (long) priority;
+    }
+
+    private int bucketFor(long key) {
+        if (key < cursor || key - cursor > maxGap) {
+            throw new IllegalArgumentException("Priority " + key + " is outside [" + cursor + ", " + (cursor + maxGap) + "]");
+        }
+        return (int) (key % heads.length);
+    }
+
+    private void link(int id, int bucket) {
+        int head = heads[bucket];
+        next[id] = head;
+        prev[id] = -1;
+        if (head >= 0) prev[head] = id;
+        heads[bucket] = id;
+        bucketOf[id] = bucket;
+    }
+
+    private void unlink(int id) {
+        int before = prev[id];
+        int after = next[id];
+        if (before >= 0) {
+            next[before] = after;
+        } else {
+            heads[bucketOf[id]] = after;
+        }
+        if (after >= 0) prev[after] = before;
+        bucketOf[id] = -1;
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return id < bucketOf.length && bucketOf[id] >= 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Empties the queue. Only the buckets from the cursor up to the last id still queued are visited, so this is
+     * O(size + maxGap) at worst.
+     */
+    @Override
+    public void clear() {
+        int bucket = (int) (cursor % heads.length);
+        while (size > 0) {
+            for (int id = heads[bucket]; id >= 0; id = next[id]) {
+                bucketOf[id] = -1;
+                size--;
+            }
+            heads[bucket] = -1;
+            if (++bucket == heads.length) bucket = 0;
+        }
+        cursor = 0;
+    }
+}
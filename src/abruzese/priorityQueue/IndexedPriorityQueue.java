@@ -45,6 +45,13 @@ public class IndexedPriorityQueue<E> {
         return result;
     }
 
+    /**
+     * @return the element with the highest priority without removing it, or null if the queue is empty
+     */
+    public E peek() {
+        return size == 0 ? null : elements.getFirst();
+    }
+
     /**
      * Decreases the priority of an element finding it using a hashtable instead of linear searching
      */
@@ -0,0 +1,66 @@
+package abruzese.priorityQueue;
+
+/**
+ * The same as {@link IntIndexedMinHeap} but every node has d children instead of 2. The heap is only log_d n deep,
+ * so the decreaseKeys that Dijkstra does far more of than polls have fewer levels to bubble up through, and the d
+ * children of a node sit next to each other in memory when polling looks for the smallest. 4 children is usually
+ * the sweet spot.
+ */
+public class IntIndexedDaryHeap extends IntIndexedHeap {
+    public static final int DEFAULT_ARITY = 4;
+
+    private final int arity;
+
+    public IntIndexedDaryHeap(int capacity) {
+        this(DEFAULT_ARITY, capacity);
+    }
+
+    public IntIndexedDaryHeap(int arity, int capacity) {
+        super(capacity);
+        if (arity < 2) throw new IllegalArgumentException("Arity must be at least 2");
+        this.arity = arity;
+    }
+
+    /**
+     * @return how many children each node has
+     */
+    public int getArity() {
+        return arity;
+    }
+
+    @Override
+    void bubbleUp(int k) {
+        int id = heap[k];
+        double key = keys[k];
+        while (k > 0) {
+            int parent = (k - 1) / arity;
+            if (key >= keys[parent]) break;
+            place(k, heap[parent], keys[parent]);
+            k = parent;
+        }
+        place(k, id, key);
+    }
+
+    @Override
+    void bubbleDown(int k) {
+        int id = heap[k];
+        double key = keys[k];
+        while (true) {
+            int first = k * arity + 1;
+            if (first >= size) break;
+
+            // Smallest of up to arity children
+            int child = first;
+            int last = Math.min(first + arity, size);
+            for (int c = first + 1; c < last; c++) {
+                if (keys[c] < keys[child]) child = c;
+            }
+
+            if (key <= keys[child]) break;
+
+            place(k, heap[child], keys[child]);
+            k = child;
+        }
+        place(k, id, key);
+    }
+}
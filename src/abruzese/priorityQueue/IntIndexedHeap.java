@@ -0,0 +1,161 @@
+package abruzese.priorityQueue;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * The parts of an indexed min heap of dense int ids (0 until capacity) with double priorities that don't depend on
+ * how many children a node has. The priorities are stored next to the ids in the heap arrays and the position of
+ * every id is kept in an int array, so add, decreaseKey, poll and contains never box or allocate. Subclasses only
+ * say how an entry moves up or down the tree.
+ * <p>
+ * clear() only touches the ids still in the heap, so one heap can be reused across many searches without paying
+ * for the whole id range every time.
+ */
+abstract class IntIndexedHeap implements IntPriorityQueue {
+    int[] heap;
+    double[] keys;
+    int[] positions; // position of each id in the heap, -1 if absent
+    int size;
+
+    IntIndexedHeap(int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("Capacity cannot be negative");
+        this.heap = new int[capacity];
+        this.keys = new double[capacity];
+        this.positions = new int[capacity];
+        Arrays.fill(positions, -1);
+        this.size = 0;
+    }
+
+    /**
+     * Moves the entry at index k towards the root until its parent's priority is no bigger than its own.
+     */
+    abstract void bubbleUp(int k);
+
+    /**
+     * Moves the entry at index k towards the leaves until none of its children has a smaller priority.
+     */
+    abstract void bubbleDown(int k);
+
+    /**
+     * Puts id with its priority at index k and records where it is.
+     */
+    final void place(int k, int id, double key) {
+        heap[k] = id;
+        keys[k] = key;
+        positions[id] = k;
+    }
+
+    /**
+     * Grows the heap so it can hold ids up to capacity - 1. Existing contents are kept.
+     */
+    @Override
+    public void ensureCapacity(int capacity) {
+        if (capacity <= positions.length) return;
+
+        int oldCapacity = positions.length;
+        heap = Arrays.copyOf(heap, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+        Arrays.fill(positions, oldCapacity, capacity, -1);
+    }
+
+    @Override
+    public void add(int id, double priority) {
+        if (positions[id] >= 0) throw new IllegalArgumentException("Id already in heap: " + id);
+
+        heap[size] = id;
+        keys[size] = priority;
+        positions[id] = size;
+        bubbleUp(size++);
+    }
+
+    /**
+     * Lowers the priority of an id already in the heap.
+     */
+    @Override
+    public void decreaseKey(int id, double priority) {
+        int index = positions[id];
+        if (index < 0) throw new NoSuchElementException("Id not in heap: " + id);
+
+        keys[index] = priority;
+        bubbleUp(index);
+    }
+
+    /**
+     * Adds id if it isn't in the heap yet, otherwise lowers its priority.
+     */
+    @Override
+    public void addOrDecrease(int id, double priority) {
+        if (positions[id] >= 0) {
+            decreaseKey(id, priority);
+        } else {
+            add(id, priority);
+        }
+    }
+
+    /**
+     * Removes the id with the smallest priority.
+     *
+     * @return the removed id
+     */
+    @Override
+    public int poll() {
+        if (size == 0) throw new NoSuchElementException("Priority queue is empty");
+
+        int result = heap[0];
+        positions[result] = -1;
+
+        if (--size > 0) {
+            heap[0] = heap[size];
+            keys[0] = keys[size];
+            positions[heap[0]] = 0;
+            bubbleDown(0);
+        }
+        return result;
+    }
+
+    /**
+     * @return the id with the smallest priority without removing it
+     */
+    @Override
+    public int peek() {
+        if (size == 0) throw new NoSuchElementException("Priority queue is empty");
+        return heap[0];
+    }
+
+    /**
+     * @return the smallest priority in the heap
+     */
+    @Override
+    public double peekPriority() {
+        if (size == 0) throw new NoSuchElementException("Priority queue is empty");
+        return keys[0];
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return id < positions.length && positions[id] >= 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Empties the heap in O(size) rather than O(capacity).
+     */
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+}
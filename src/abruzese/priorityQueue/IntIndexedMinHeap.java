@@ -0,0 +1,45 @@
+package abruzese.priorityQueue;
+
+/**
+ * A binary min heap of dense int ids (0 until capacity) with double priorities. Everything but moving entries up
+ * and down is shared with {@link IntIndexedDaryHeap} through {@link IntIndexedHeap}, the binary heap finds parents
+ * and children with shifts instead of dividing by the arity.
+ */
+public class IntIndexedMinHeap extends IntIndexedHeap {
+    public IntIndexedMinHeap(int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    void bubbleUp(int k) {
+        int id = heap[k];
+        double key = keys[k];
+        while (k > 0) {
+            int parent = (k - 1) >>> 1;
+            if (key >= keys[parent]) break;
+            place(k, heap[parent], keys[parent]);
+            k = parent;
+        }
+        place(k, id, key);
+    }
+
+    @Override
+    void bubbleDown(int k) {
+        int id = heap[k];
+        double key = keys[k];
+        int half = size >>> 1;
+        while (k < half) {
+            int child = (k << 1) + 1;
+            int right = child + 1;
+            if (right < size && keys[right] < keys[child]) {
+                child = right;
+            }
+
+            if (key <= keys[child]) break;
+
+            place(k, heap[child], keys[child]);
+            k = child;
+        }
+        place(k, id, key);
+    }
+}
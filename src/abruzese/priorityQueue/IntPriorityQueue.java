@@ -0,0 +1,58 @@
+package abruzese.priorityQueue;
+
+/**
+ * A min priority queue of dense int ids (0 until capacity) with double priorities, where each id is in the queue
+ * at most once and its priority can be lowered in place. This is what the graph searches use as their frontier.
+ */
+public interface IntPriorityQueue {
+    /**
+     * Grows the queue so it can hold ids up to capacity - 1. Existing contents are kept.
+     */
+    void ensureCapacity(int capacity);
+
+    void add(int id, double priority);
+
+    /**
+     * Lowers the priority of an id already in the queue.
+     */
+    void decreaseKey(int id, double priority);
+
+    /**
+     * Adds id if it isn't in the queue yet, otherwise lowers its priority.
+     */
+    default void addOrDecrease(int id, double priority) {
+        if (contains(id)) {
+            decreaseKey(id, priority);
+        } else {
+            add(id, priority);
+        }
+    }
+
+    /**
+     * Removes the id with the smallest priority.
+     *
+     * @return the removed id
+     */
+    int poll();
+
+    /**
+     * @return the id with the smallest priority without removing it
+     */
+    int peek();
+
+    /**
+     * @return the smallest priority in the queue
+     */
+    double peekPriority();
+
+    boolean contains(int id);
+
+    boolean isEmpty();
+
+    int size();
+
+    /**
+     * Empties the queue, in time proportional to its size rather than its capacity.
+     */
+    void clear();
+}
@@ -6,89 +6,126 @@ import abruzese.graph.edges.Road;
 import abruzese.graph.vertices.Intersection;
 import abruzese.hashtable.HashTable;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
 /**
  * Builds a graph from a file, following the format for this project.
+ * <p>
+ * Loading streams in two passes: {@link MapParser#count} counts the lines so the graph and the ID table are made
+ * at their final size, then the text is parsed on every core a batch at a time, and each batch goes straight into
+ * the graph in file order before the next one is read. Nothing but the graph and the ID table lasts longer than one
+ * batch, so the graph comes out the same as reading the file line by line without holding the whole file parsed.
  */
 public class MapBuilder {
+    /**
+     * A loaded map: the graph, and the table from intersection ID to intersection that loading builds anyway to find
+     * the ends of each road.
+     */
+    public record LoadedMap(Graph<Intersection, Road> graph, HashTable<String, Intersection> intersectionsByID) {
+    }
+
     /**
      * Builds a graph from a file, following the format for this project.
      */
     public static Graph<Intersection, Road> buildFromFile(String filename) throws IOException {
-        Graph<Intersection, Road> graph = new ALGraph<>();
-        LinkedList<Intersection> intersectionList = new LinkedList<>();
-        LinkedList<Object[]> edges = new LinkedList<>();
-        HashTable<String, Intersection> intersectionMap = new HashTable<>();
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\t");
-
-                if (parts.length < 2) {
-                    continue;
-                }
+        return load(filename).graph();
+    }
 
-                switch (parts[0]) {
-                    case "i":
-                        if (parts.length >= 4) {
-                            processIntersection(parts, intersectionList, intersectionMap);
-                        }
-                        break;
-                    case "r":
-                        if (parts.length >= 4) {
-                            processRoad(parts, edges, intersectionMap);
-                        }
-                        break;
-                }
-            }
-            graph.addAll(intersectionList);
-            for(Object[] edge : edges) {
-                graph.set((Intersection) edge[0], (Intersection) edge[1], (Road) edge[2]);
+    /**
+     * Builds a graph from a file the same as {@link #buildFromFile(String)}, and keeps the ID table too.
+     */
+    public static LoadedMap load(String filename) throws IOException {
+        MapParser.Counts counts = MapParser.count(filename);
+        // Every road is added both ways, so it's a neighbor for both of its ends
+        int averageDegree = counts.intersections() == 0 ? 0
+                : (int) Math.ceil(2.0 * counts.roads() / counts.intersections());
+        Graph<Intersection, Road> graph = new ALGraph<>(counts.intersections(), averageDegree);
+        HashTable<String, Intersection> intersectionMap =
+                new HashTable<>((int) (counts.intersections() / 0.75f) + 1);
+        // Roads read before one of their intersections wait here until the whole file has been read
+        MapParser.Chunk waiting = new MapParser.Chunk();
+
+        MapParser.parse(filename, batch -> addBatch(batch, graph, intersectionMap, waiting));
+
+        Road[] roads = new Road[waiting.roadCount];
+        Intersection[] roadEnds = new Intersection[2 * waiting.roadCount];
+        for (int r = 0; r < waiting.roadCount; r++) {
+            if (!processRoad(waiting, r, roads, roadEnds, intersectionMap)) {
+                throw new IllegalArgumentException("Road references non-existent intersection(s)");
             }
         }
+        addRoads(graph, roads, roadEnds);
 
-        return graph;
+        return new LoadedMap(graph, intersectionMap);
     }
 
     /**
-     * Parses and adds intersection to the list and map
+     * Adds one batch of parsed chunks to the graph: the intersections first, then every road whose ends are known.
      */
-    private static void processIntersection(String[] parts, LinkedList<Intersection> intersectionList,
-                                            HashTable<String, Intersection> intersectionMap) {
-        String id = parts[1];
-        double latitude = Double.parseDouble(parts[2]);
-        double longitude = Double.parseDouble(parts[3]);
+    private static void addBatch(MapParser.Chunk[] batch, Graph<Intersection, Road> graph,
+                                 HashTable<String, Intersection> intersectionMap, MapParser.Chunk waiting) {
+        for (MapParser.Chunk chunk : batch) {
+            for (int i = 0; i < chunk.intersectionCount; i++) {
+                Intersection intersection = chunk.intersections[i];
+                intersectionMap.put(intersection.intersectionID(), intersection);
+            }
+            graph.addAll(Arrays.asList(chunk.intersections).subList(0, chunk.intersectionCount));
+        }
+
+        // Looking up the ends of the roads only reads the table, so every chunk in the batch can do it at once
+        Road[][] roads = new Road[batch.length][];
+        Intersection[][] roadEnds = new Intersection[batch.length][];
+        IntStream.range(0, batch.length).parallel().forEach(c -> {
+            roads[c] = new Road[batch[c].roadCount];
+            roadEnds[c] = new Intersection[2 * batch[c].roadCount];
+            for (int r = 0; r < batch[c].roadCount; r++) {
+                processRoad(batch[c], r, roads[c], roadEnds[c], intersectionMap);
+            }
+        });
 
-        Intersection intersection = new Intersection(id, longitude, latitude);
-        intersectionMap.put(id, intersection);
+        for (int c = 0; c < batch.length; c++) {
+            for (int r = 0; r < roads[c].length; r++) {
+                if (roads[c][r] == null) {
+                    waiting.addRoad(batch[c].roadIDs[r], batch[c].roadStarts[r], batch[c].roadEnds[r]);
+                }
+            }
+            addRoads(graph, roads[c], roadEnds[c]);
+        }
+    }
 
-        intersectionList.add(intersection);
+    private static void addRoads(Graph<Intersection, Road> graph, Road[] roads, Intersection[] roadEnds) {
+        for (int r = 0; r < roads.length; r++) {
+            if (roads[r] == null) continue;
+            Intersection intersection1 = roadEnds[2 * r];
+            Intersection intersection2 = roadEnds[2 * r + 1];
+            // Add road in both directions since the graph is undirected
+            graph.set(intersection1, intersection2, roads[r]);
+            graph.set(intersection2, intersection1, roads[r]);
+        }
     }
 
     /**
-     * Parses and adds road to the list and map
+     * Finds the intersections at the ends of a road and makes it
+     *
+     * @return false, leaving the road out, if either intersection hasn't been read yet
      */
-    private static void processRoad(String[] parts, LinkedList<Object[]> edges,
-                                    HashTable<String, Intersection> intersectionMap) {
-        String roadId = parts[1];
-        Intersection intersection1 = intersectionMap.get(parts[2]);
-        Intersection intersection2 = intersectionMap.get(parts[3]);
+    private static boolean processRoad(MapParser.Chunk chunk, int r, Road[] roads, Intersection[] roadEnds,
+                                       HashTable<String, Intersection> intersectionMap) {
+        Intersection intersection1 = intersectionMap.get(chunk.roadStarts[r]);
+        Intersection intersection2 = intersectionMap.get(chunk.roadEnds[r]);
 
         if (intersection1 == null || intersection2 == null) {
-            throw new IllegalArgumentException("Road references non-existent intersection(s)");
+            return false;
         }
 
         // Calculate distance between intersections
         int distance = (int) Helpers.estimateDistance(intersection1, intersection2);
 
-        // Add road in both directions since the graph is undirected
-        Road road = new Road(roadId, distance);
-        edges.add(new Object[]{intersection1, intersection2, road});
-        edges.add(new Object[]{intersection2, intersection1, road});
+        roads[r] = new Road(chunk.roadIDs[r], distance);
+        roadEnds[2 * r] = intersection1;
+        roadEnds[2 * r + 1] = intersection2;
+        return true;
     }
-}
\ No newline at end of file
+}
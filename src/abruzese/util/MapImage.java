@@ -0,0 +1,330 @@
+package abruzese.util;
+
+import abruzese.graph.CSRGraph;
+import abruzese.graph.edges.Road;
+import abruzese.graph.vertices.Intersection;
+import abruzese.hashtable.HashTable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A map saved as a binary image that gets opened with FileChannel.map instead of parsed. Opening one doesn't read
+ * the file at all, the OS pages it in as it's used, and every process that opens the same image shares those pages.
+ * <p>
+ * The file is little endian and every section starts on an 8 byte boundary:
+ * <pre>
+ * header        magic "MAPI", version, vertex count n, edge count m, road count r, ID table size t,
+ *               ID pool bytes, road pool bytes (8 ints, padded to 64 bytes)
+ * latitudes     double[n]
+ * longitudes    double[n]
+ * offsets       int[n + 1], the edges of vertex v are the slots offsets[v] until offsets[v + 1]
+ * targets       int[m]
+ * weights       int[m], whole metres like MapBuilder makes them
+ * edge roads    int[m], which road ID each edge slot belongs to
+ * ID offsets    int[n + 1] into the ID pool
+ * ID pool       the UTF-8 bytes of every intersection ID back to back
+ * road offsets  int[r + 1] into the road pool
+ * road pool     the UTF-8 bytes of every road ID back to back
+ * ID table      int[t], open addressed by intersection ID hash, each slot is a vertex id + 1 or 0 if empty
+ * </pre>
+ * The ID table means looking up an intersection by ID reads a few slots of the file instead of building a table of
+ * every intersection first.
+ */
+public final class MapImage {
+    private static final int MAGIC = 0x4950414D; // "MAPI" read little endian
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+
+    private final ByteBuffer buffer;
+    private final Layout layout;
+
+    private MapImage(ByteBuffer buffer, Layout layout) {
+        this.buffer = buffer;
+        this.layout = layout;
+    }
+
+    /**
+     * Where each section of an image starts, worked out from the counts in the header.
+     */
+    private record Layout(int vertexCount, int edgeCount, int roadCount, int tableSize, int idPoolBytes,
+                          int roadPoolBytes, long latitudes, long longitudes, long offsets, long targets,
+                          long weights, long edgeRoads, long idOffsets, long idPool, long roadOffsets,
+                          long roadPool, long idTable, long totalBytes) {
+        static Layout of(int n, int m, int r, int t, int idPoolBytes, int roadPoolBytes) {
+            long latitudes = HEADER_BYTES;
+            long longitudes = align(latitudes + 8L * n);
+            long offsets = align(longitudes + 8L * n);
+            long targets = align(offsets + 4L * (n + 1));
+            long weights = align(targets + 4L * m);
+            long edgeRoads = align(weights + 4L * m);
+            long idOffsets = align(edgeRoads + 4L * m);
+            long idPool = align(idOffsets + 4L * (n + 1));
+            long roadOffsets = align(idPool + idPoolBytes);
+            long roadPool = align(roadOffsets + 4L * (r + 1));
+            long idTable = align(roadPool + roadPoolBytes);
+            long totalBytes = idTable + 4L * t;
+            return new Layout(n, m, r, t, idPoolBytes, roadPoolBytes, latitudes, longitudes, offsets, targets,
+                    weights, edgeRoads, idOffsets, idPool, roadOffsets, roadPool, idTable, totalBytes);
+        }
+
+        private static long align(long position) {
+            return (position + 7) & ~7L;
+        }
+    }
+
+    /**
+     * @return whether the file starts like a map image rather than a text map
+     */
+    public static boolean isImage(String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            while (magic.hasRemaining()) {
+                if (channel.read(magic) < 0) return false;
+            }
+            return magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Maps an image into memory. Nothing past the header is read until it's used.
+     *
+     * @throws IOException if the file can't be read or isn't a map image
+     */
+    public static MapImage open(String filename) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) throw new IOException("Not a map image: " + filename);
+            if (size > Integer.MAX_VALUE) throw new IOException("Map image is too big to map: " + filename);
+            // The mapping stays valid after the channel is closed
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.getInt(0) != MAGIC) throw new IOException("Not a map image: " + filename);
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported map image version " + buffer.getInt(4) + ": " + filename);
+        }
+        Layout layout = Layout.of(buffer.getInt(8), buffer.getInt(12), buffer.getInt(16), buffer.getInt(20),
+                buffer.getInt(24), buffer.getInt(28));
+        if (layout.totalBytes() != buffer.capacity()) {
+            throw new IOException("Map image is truncated or corrupt: " + filename);
+        }
+        return new MapImage(buffer, layout);
+    }
+
+    /**
+     * Writes a map to an image file, replacing it if it exists.
+     *
+     * @throws IllegalArgumentException if some road isn't a whole number of metres
+     */
+    public static void write(CSRGraph<Intersection, Road> graph, String filename) throws IOException {
+        if (graph.getMaxIntegerWeight() < 0) {
+            throw new IllegalArgumentException("Map images can only store whole metre roads");
+        }
+        int n = graph.vertexCount();
+        int m = graph.edgeCount();
+
+        byte[][] ids = new byte[n][];
+        int idPoolBytes = 0;
+        for (int v = 0; v < n; v++) {
+            ids[v] = graph.vertexAt(v).intersectionID().getBytes(StandardCharsets.UTF_8);
+            idPoolBytes += ids[v].length;
+        }
+
+        // Both directions of a road share its ID, so each one is only stored once
+        HashTable<String, Integer> roadIndices = new HashTable<>();
+        List<byte[]> roads = new ArrayList<>();
+        int[] edgeRoads = new int[m];
+        int roadPoolBytes = 0;
+        for (int e = 0; e < m; e++) {
+            String roadID = graph.edgeWeight(e).roadID;
+            Integer index = roadIndices.get(roadID);
+            if (index == null) {
+                index = roads.size();
+                roadIndices.put(roadID, index);
+                byte[] bytes = roadID.getBytes(StandardCharsets.UTF_8);
+                roads.add(bytes);
+                roadPoolBytes += bytes.length;
+            }
+            edgeRoads[e] = index;
+        }
+
+        int tableSize = Integer.highestOneBit(Math.max(2, 2 * n) - 1) << 1;
+        Layout layout = Layout.of(n, m, roads.size(), tableSize, idPoolBytes, roadPoolBytes);
+        if (layout.totalBytes() > Integer.MAX_VALUE) {
+            throw new IOException("Map is too big for one image");
+        }
+
+        ByteBuffer out = ByteBuffer.allocate((int) layout.totalBytes()).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, n).putInt(12, m).putInt(16, roads.size())
+                .putInt(20, tableSize).putInt(24, idPoolBytes).putInt(28, roadPoolBytes);
+
+        for (int v = 0; v < n; v++) {
+            Intersection intersection = graph.vertexAt(v);
+            out.putDouble((int) layout.latitudes() + 8 * v, intersection.latitude());
+            out.putDouble((int) layout.longitudes() + 8 * v, intersection.longitude());
+            out.putInt((int) layout.offsets() + 4 * v, graph.outStart(v));
+        }
+        out.putInt((int) layout.offsets() + 4 * n, m);
+
+        for (int e = 0; e < m; e++) {
+            out.putInt((int) layout.targets() + 4 * e, graph.target(e));
+            out.putInt((int) layout.weights() + 4 * e, (int) graph.weight(e));
+            out.putInt((int) layout.edgeRoads() + 4 * e, edgeRoads[e]);
+        }
+
+        int poolOffset = 0;
+        for (int v = 0; v < n; v++) {
+            out.putInt((int) layout.idOffsets() + 4 * v, poolOffset);
+            out.put((int) layout.idPool() + poolOffset, ids[v]);
+            poolOffset += ids[v].length;
+        }
+        out.putInt((int) layout.idOffsets() + 4 * n, poolOffset);
+
+        poolOffset = 0;
+        for (int r = 0; r < roads.size(); r++) {
+            out.putInt((int) layout.roadOffsets() + 4 * r, poolOffset);
+            out.put((int) layout.roadPool() + poolOffset, roads.get(r));
+            poolOffset += roads.get(r).length;
+        }
+        out.putInt((int) layout.roadOffsets() + 4 * roads.size(), poolOffset);
+
+        int mask = tableSize - 1;
+        for (int v = 0; v < n; v++) {
+            int slot = hash(graph.vertexAt(v).intersectionID()) & mask;
+            while (out.getInt((int) layout.idTable() + 4 * slot) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            out.putInt((int) layout.idTable() + 4 * slot, v + 1);
+        }
+
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+
+    /**
+     * Spreads the bits of the ID's hashCode, the same way HashTable does. String.hashCode is fixed by the spec so
+     * hashes written by one process can be looked up by another.
+     */
+    private static int hash(String id) {
+        int h = id.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    public int vertexCount() {
+        return layout.vertexCount();
+    }
+
+    public int edgeCount() {
+        return layout.edgeCount();
+    }
+
+    public double latitude(int v) {
+        return buffer.getDouble((int) layout.latitudes() + 8 * v);
+    }
+
+    public double longitude(int v) {
+        return buffer.getDouble((int) layout.longitudes() + 8 * v);
+    }
+
+    public String intersectionID(int v) {
+        return string(layout.idOffsets(), layout.idPool(), v);
+    }
+
+    public Intersection intersection(int v) {
+        return new Intersection(intersectionID(v), longitude(v), latitude(v));
+    }
+
+    public String roadID(int e) {
+        return string(layout.roadOffsets(), layout.roadPool(), buffer.getInt((int) layout.edgeRoads() + 4 * e));
+    }
+
+    private String string(long offsets, long pool, int index) {
+        int start = buffer.getInt((int) offsets + 4 * index);
+        int end = buffer.getInt((int) offsets + 4 * (index + 1));
+        byte[] bytes = new byte[end - start];
+        buffer.get((int) pool + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the vertex id of the intersection with the given ID, or -1 if there's none
+     */
+    public int indexOf(String intersectionID) {
+        byte[] wanted = intersectionID.getBytes(StandardCharsets.UTF_8);
+        int mask = layout.tableSize() - 1;
+        int slot = hash(intersectionID) & mask;
+
+        int entry;
+        while ((entry = buffer.getInt((int) layout.idTable() + 4 * slot)) != 0) {
+            if (idEquals(entry - 1, wanted)) return entry - 1;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private boolean idEquals(int v, byte[] wanted) {
+        int start = buffer.getInt((int) layout.idOffsets() + 4 * v);
+        int end = buffer.getInt((int) layout.idOffsets() + 4 * (v + 1));
+        if (end - start != wanted.length) return false;
+
+        int pool = (int) layout.idPool() + start;
+        for (int i = 0; i < wanted.length; i++) {
+            if (buffer.get(pool + i) != wanted[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Makes a graph that runs straight off this image. The CSR arrays the searches run on are bulk copied out (a
+     * memcpy, even for big maps), while intersections and roads are only made from the image the first time
+     * something asks for them.
+     */
+    public CSRGraph<Intersection, Road> toGraph() {
+        int n = layout.vertexCount();
+        int m = layout.edgeCount();
+
+        int[] offsets = new int[n + 1];
+        int[] targets = new int[m];
+        ints(layout.offsets(), n + 1).get(offsets);
+        ints(layout.targets(), m).get(targets);
+
+        IntBuffer metres = ints(layout.weights(), m);
+        double[] weights = new double[m];
+        for (int e = 0; e < m; e++) {
+            weights[e] = metres.get(e);
+        }
+
+        return CSRGraph.fromArrays(offsets, targets, weights, this::intersection, intersection -> {
+            int v = indexOf(intersection.intersectionID());
+            // Same check as Intersection.equals without making the record
+            boolean same = v >= 0 && Double.compare(latitude(v), intersection.latitude()) == 0
+                    && Double.compare(longitude(v), intersection.longitude()) == 0;
+            return same ? v : -1;
+        }, e -> new Road(roadID(e), weights[e]));
+    }
+
+    private IntBuffer ints(long position, int count) {
+        return buffer.slice((int) position, 4 * count).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+}
@@ -0,0 +1,303 @@
+package abruzese.util;
+
+import abruzese.graph.vertices.Intersection;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Parses the map text format on every core. The file is cut into byte ranges that end on line breaks, and each range
+ * is read and parsed on its own thread straight from the bytes, with a tab scanner instead of String.split and a
+ * number parser instead of Double.parseDouble, so the only things allocated per line are the ID strings.
+ * <p>
+ * Lines are handled exactly like reading the file with BufferedReader.readLine and splitting on tabs: lines end at
+ * \n, \r or \r\n, trailing empty fields don't count, and lines that aren't an intersection or road with at least
+ * 4 fields are skipped.
+ * <p>
+ * Ranges are parsed a batch at a time so MapBuilder can put each batch into the graph and drop it before the next
+ * is read, and {@link #count} makes a cheap first pass over the file so the graph can be sized before that.
+ */
+final class MapParser {
+    // Ranges smaller than this aren't worth a thread of their own
+    private static final int MIN_CHUNK_BYTES = 1 << 20;
+    // Ranges are read into one array each, so this caps the memory every thread holds
+    private static final int MAX_CHUNK_BYTES = 64 << 20;
+
+    private MapParser() {
+    }
+
+    /**
+     * The intersections and roads of one byte range of the file, in the order they appear in it.
+     */
+    static final class Chunk {
+        Intersection[] intersections = new Intersection[16];
+        int intersectionCount;
+        String[] roadIDs = new String[16];
+        String[] roadStarts = new String[16];
+        String[] roadEnds = new String[16];
+        int roadCount;
+
+        private void addIntersection(Intersection intersection) {
+            if (intersectionCount == intersections.length) {
+                intersections = Arrays.copyOf(intersections, intersectionCount * 2);
+            }
+            intersections[intersectionCount++] = intersection;
+        }
+
+        void addRoad(String roadID, String start, String end) {
+            if (roadCount == roadIDs.length) {
+                roadIDs = Arrays.copyOf(roadIDs, roadCount * 2);
+                roadStarts = Arrays.copyOf(roadStarts, roadCount * 2);
+                roadEnds = Arrays.copyOf(roadEnds, roadCount * 2);
+            }
+            roadIDs[roadCount] = roadID;
+            roadStarts[roadCount] = start;
+            roadEnds[roadCount] = end;
+            roadCount++;
+        }
+    }
+
+    /**
+     * How many intersection and road lines a file has, going by the first field alone, for sizing tables before
+     * the real parse.
+     */
+    record Counts(int intersections, int roads) {
+    }
+
+    /**
+     * The quick first pass: looks only at the first two bytes of every line, so it allocates nothing per line.
+     */
+    static Counts count(String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            long[] bounds = chunkBounds(channel);
+            long[] counts = new long[2 * (bounds.length - 1)];
+            forEachRange(channel, bounds, 0, bounds.length - 1, (i, bytes) -> {
+                int position = 0;
+                while (position < bytes.length) {
+                    if (position + 1 < bytes.length && bytes[position + 1] == '\t') {
+                        if (bytes[position] == 'i') counts[2 * i]++;
+                        else if (bytes[position] == 'r') counts[2 * i + 1]++;
+                    }
+                    while (position < bytes.length && bytes[position] != '\n' && bytes[position] != '\r') {
+                        position++;
+                    }
+                    position++;
+                }
+            });
+
+            long intersections = 0;
+            long roads = 0;
+            for (int i = 0; i < counts.length; i += 2) {
+                intersections += counts[i];
+                roads += counts[i + 1];
+            }
+            return new Counts((int) Math.min(intersections, Integer.MAX_VALUE),
+                    (int) Math.min(roads, Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Parses the file a batch of ranges at a time, one range per core, handing each batch over in file order
+     * before starting the next. Only one batch of text and parsed lines is ever held, however big the file is.
+     *
+     * @param batches called on this thread with each batch of parsed chunks, in file order
+     */
+    static void parse(String filename, Consumer<Chunk[]> batches) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            long[] bounds = chunkBounds(channel);
+            int ranges = bounds.length - 1;
+            int batchSize = Runtime.getRuntime().availableProcessors();
+            for (int first = 0; first < ranges; first += batchSize) {
+                int offset = first;
+                Chunk[] batch = new Chunk[Math.min(batchSize, ranges - first)];
+                forEachRange(channel, bounds, first, first + batch.length,
+                        (i, bytes) -> batch[i - offset] = parseChunk(bytes));
+                batches.accept(batch);
+            }
+        }
+    }
+
+    private interface RangeReader {
+        void accept(int range, byte[] bytes);
+    }
+
+    /**
+     * Reads the ranges from first until end in parallel and hands each one's bytes to reader on the thread that
+     * read it.
+     */
+    private static void forEachRange(FileChannel channel, long[] bounds, int first, int end, RangeReader reader)
+            throws IOException {
+        try {
+            IntStream.range(first, end).parallel().forEach(i -> {
+                try {
+                    reader.accept(i, read(channel, bounds[i], (int) (bounds[i + 1] - bounds[i])));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Splits the file into a few ranges per core, moving every cut to just past the next line break.
+     *
+     * @return the start of every range followed by the end of the file
+     */
+    private static long[] chunkBounds(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long target = size / (4L * Runtime.getRuntime().availableProcessors());
+        long chunkBytes = Math.min(MAX_CHUNK_BYTES, Math.max(MIN_CHUNK_BYTES, target));
+
+        long[] bounds = new long[(int) (size / chunkBytes) + 2];
+        int count = 1;
+        long previous = 0;
+        for (long cut = chunkBytes; cut < size; cut += chunkBytes) {
+            long bound = nextLineStart(channel, Math.max(cut, previous), size);
+            if (bound >= size) break;
+            if (bound > previous) {
+                bounds[count++] = bound;
+                previous = bound;
+            }
+        }
+        bounds[count++] = size;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * @return the position just past the first line break at or after position, or size if there is none
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) break;
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n' || b == '\r') return position + i + 1;
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static byte[] read(FileChannel channel, long position, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            // Positional reads don't touch the channel's position, so threads can share it
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Map file got shorter while reading it");
+            }
+        }
+        return bytes;
+    }
+
+    private static Chunk parseChunk(byte[] bytes) {
+        Chunk chunk = new Chunk();
+        // Where each of the first 4 fields of a line starts and ends
+        int[] starts = new int[4];
+        int[] ends = new int[4];
+
+        int position = 0;
+        while (position < bytes.length) {
+            int lineEnd = position;
+            while (lineEnd < bytes.length && bytes[lineEnd] != '\n' && bytes[lineEnd] != '\r') {
+                lineEnd++;
+            }
+
+            // Split on tabs, counting fields up to the last non empty one like String.split does
+            int fields = 0;
+            int nonEmptyFields = 0;
+            int fieldStart = position;
+            for (int i = position; i <= lineEnd; i++) {
+                if (i == lineEnd || bytes[i] == '\t') {
+                    if (fields < 4) {
+                        starts[fields] = fieldStart;
+                        ends[fields] = i;
+                    }
+                    fields++;
+                    if (i > fieldStart) nonEmptyFields = fields;
+                    fieldStart = i + 1;
+                }
+            }
+
+            if (nonEmptyFields >= 4 && ends[0] - starts[0] == 1) {
+                byte type = bytes[starts[0]];
+                if (type == 'i') {
+                    String id = string(bytes, starts[1], ends[1]);
+                    double latitude = parseDouble(bytes, starts[2], ends[2]);
+                    double longitude = parseDouble(bytes, starts[3], ends[3]);
+                    chunk.addIntersection(new Intersection(id, longitude, latitude));
+                } else if (type == 'r') {
+                    chunk.addRoad(string(bytes, starts[1], ends[1]), string(bytes, starts[2], ends[2]),
+                            string(bytes, starts[3], ends[3]));
+                }
+            }
+
+            // \r\n leaves an empty line behind, which gets skipped like any other
+            position = lineEnd + 1;
+        }
+        return chunk;
+    }
+
+    private static String string(byte[] bytes, int start, int end) {
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Parses a plain decimal like -77.000209. With at most 15 significant digits the digits fit exactly in a double,
+     * as does 10^decimals, so one division gives the correctly rounded answer, the same double Double.parseDouble
+     * would. Anything else (exponents, more digits, whitespace, garbage) is handed to Double.parseDouble.
+     */
+    static double parseDouble(byte[] bytes, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+
+        long digits = 0;
+        int significantDigits = 0;
+        int decimals = 0;
+        boolean anyDigits = false;
+        boolean pastPoint = false;
+        for (; i < end; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                anyDigits = true;
+                if (digits != 0 || b != '0') significantDigits++;
+                digits = digits * 10 + (b - '0');
+                if (pastPoint) decimals++;
+                if (significantDigits > 15 || decimals >= POWERS_OF_TEN.length) break;
+            } else if (b == '.' && !pastPoint) {
+                pastPoint = true;
+            } else {
+                break;
+            }
+        }
+
+        if (i != end || !anyDigits) {
+            return Double.parseDouble(string(bytes, start, end));
+        }
+        double value = digits / POWERS_OF_TEN[decimals];
+        return negative ? -value : value;
+    }
+}
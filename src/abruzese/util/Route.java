@@ -0,0 +1,32 @@
+package abruzese.util;
+
+import abruzese.graph.edges.Road;
+import abruzese.graph.vertices.Intersection;
+
+import java.util.List;
+
+/**
+ * A route found by {@link StreetMap#findRoute}. path holds every intersection passed through in order, and
+ * roads.get(i) is the road taken from path.get(i) to path.get(i + 1). A route that starts or ends partway along a
+ * road starts or ends at a made up intersection there, named after its coordinates, and its first or last road is
+ * only the part of the real road that's actually driven.
+ */
+public record Route(List<Intersection> path, List<Road> roads) {
+    /**
+     * @return true if there's no route at all
+     */
+    public boolean isEmpty() {
+        return path.isEmpty();
+    }
+
+    /**
+     * @return the total length of the route in metres
+     */
+    public double distance() {
+        double distance = 0;
+        for (Road road : roads) {
+            distance += road.getDistance();
+        }
+        return distance;
+    }
+}
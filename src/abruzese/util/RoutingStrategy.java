@@ -0,0 +1,42 @@
+package abruzese.util;
+
+/**
+ * The algorithms StreetMap can find paths with.
+ */
+public enum RoutingStrategy {
+    /**
+     * Dijkstra's algorithm, switching to A* for directions over 200km
+     */
+    AUTO,
+    DIJKSTRA,
+    /**
+     * Dijkstra's algorithm with a bucket queue (Dial's algorithm), only for maps with whole number road lengths
+     */
+    DIAL,
+    A_STAR,
+    /**
+     * A* with landmark (ALT) lower bounds, the landmarks are computed the first time they're needed
+     */
+    A_STAR_LANDMARKS,
+    /**
+     * Contraction Hierarchies, the hierarchy is built the first time it's needed
+     */
+    CONTRACTION_HIERARCHIES;
+
+    /**
+     * Parses the names used on the command line (auto, dijkstra, dial, astar, alt, ch).
+     *
+     * @throws IllegalArgumentException if name isn't a known strategy
+     */
+    public static RoutingStrategy fromName(String name) {
+        return switch (name.toLowerCase()) {
+            case "auto" -> AUTO;
+            case "dijkstra" -> DIJKSTRA;
+            case "dial" -> DIAL;
+            case "astar", "a*" -> A_STAR;
+            case "alt" -> A_STAR_LANDMARKS;
+            case "ch" -> CONTRACTION_HIERARCHIES;
+            default -> throw new IllegalArgumentException("Unknown routing strategy: " + name);
+        };
+    }
+}
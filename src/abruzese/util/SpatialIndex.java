@@ -0,0 +1,424 @@
+package abruzese.util;
+
+import abruzese.graph.CSRGraph;
+import abruzese.graph.Graph;
+import abruzese.graph.edges.Road;
+import abruzese.graph.vertices.Intersection;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A uniform grid over the intersections and road segments of a map, so finding what's near a point or inside a box
+ * only looks at a few cells instead of every intersection and road.
+ * <p>
+ * Coordinates are projected flat around the middle of the map (metres east and north of it), which is plenty
+ * accurate at city scale and keeps distances cheap. The grid is sized for about two intersections per cell. Each
+ * cell lists its intersections and every segment that passes through it, both stored like CSRGraph's edges: one
+ * flat array with a start offset per cell.
+ * <p>
+ * Vertices are numbered by the graph's dense ids (the frozen graph's, see {@link Graph#freeze()}), segments are
+ * the roads with each two way road counted once. The index never changes after it's built, so any number of threads
+ * can query it.
+ */
+public final class SpatialIndex {
+    private static final double METRES_PER_DEGREE = 6371000.0 * Math.PI / 180;
+    private static final double VERTICES_PER_CELL = 2;
+
+    private final CSRGraph<Intersection, Road> graph;
+    private final double originLon, originLat;
+    private final double metresPerDegreeLon;
+    private final double[] x, y;
+    private final int[] segmentFrom, segmentTo, segmentEdge;
+
+    // The grid
+    private final double minX, minY, cellSize;
+    private final int columns, rows;
+    private final int[] vertexStarts, cellVertices;
+    private final int[] segmentStarts, cellSegments;
+
+    private SpatialIndex(CSRGraph<Intersection, Road> graph) {
+        this.graph = graph;
+        int n = graph.vertexCount();
+
+        double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+        double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+        for (int v = 0; v < n; v++) {
+            Intersection intersection = graph.vertexAt(v);
+            minLon = Math.min(minLon, intersection.longitude());
+            maxLon = Math.max(maxLon, intersection.longitude());
+            minLat = Math.min(minLat, intersection.latitude());
+            maxLat = Math.max(maxLat, intersection.latitude());
+        }
+        originLon = n == 0 ? 0 : (minLon + maxLon) / 2;
+        originLat = n == 0 ? 0 : (minLat + maxLat) / 2;
+        metresPerDegreeLon = METRES_PER_DEGREE * Math.cos(Math.toRadians(originLat));
+
+        x = new double[n];
+        y = new double[n];
+        for (int v = 0; v < n; v++) {
+            Intersection intersection = graph.vertexAt(v);
+            x[v] = toX(intersection.longitude());
+            y[v] = toY(intersection.latitude());
+        }
+
+        // One segment per road, the edge going the other way is skipped if it exists
+        int segments = 0;
+        int[] from = new int[graph.edgeCount()];
+        int[] to = new int[graph.edgeCount()];
+        int[] edges = new int[graph.edgeCount()];
+        for (int v = 0; v < n; v++) {
+            for (int e = graph.outStart(v); e < graph.outEnd(v); e++) {
+                int u = graph.target(e);
+                if (u >= v || graph.edgeIndex(u, v) < 0) {
+                    from[segments] = v;
+                    to[segments] = u;
+                    edges[segments] = e;
+                    segments++;
+                }
+            }
+        }
+        segmentFrom = Arrays.copyOf(from, segments);
+        segmentTo = Arrays.copyOf(to, segments);
+        segmentEdge = Arrays.copyOf(edges, segments);
+
+        minX = n == 0 ? 0 : toX(minLon);
+        minY = n == 0 ? 0 : toY(minLat);
+        double width = Math.max(1, n == 0 ? 0 : toX(maxLon) - minX);
+        double height = Math.max(1, n == 0 ? 0 : toY(maxLat) - minY);
+        double cells = Math.max(1, n / VERTICES_PER_CELL);
+        double size = Math.sqrt(width * height / cells);
+        // A map that's all in a line would get cells far longer than the map is wide
+        size = Math.max(size, Math.max(width, height) / cells);
+        cellSize = size;
+        columns = (int) (width / size) + 1;
+        rows = (int) (height / size) + 1;
+
+        // Counting sort of the vertices by cell
+        vertexStarts = new int[columns * rows + 1];
+        for (int v = 0; v < n; v++) {
+            vertexStarts[cellOf(x[v], y[v]) + 1]++;
+        }
+        for (int c = 0; c < columns * rows; c++) {
+            vertexStarts[c + 1] += vertexStarts[c];
+        }
+        cellVertices = new int[n];
+        int[] fill = Arrays.copyOf(vertexStarts, columns * rows);
+        for (int v = 0; v < n; v++) {
+            cellVertices[fill[cellOf(x[v], y[v])]++] = v;
+        }
+
+        // Same for segments, once to count the cells each passes through and once to fill them in
+        segmentStarts = new int[columns * rows + 1];
+        for (int s = 0; s < segments; s++) {
+            forEachCell(s, c -> segmentStarts[c + 1]++);
+        }
+        for (int c = 0; c < columns * rows; c++) {
+            segmentStarts[c + 1] += segmentStarts[c];
+        }
+        cellSegments = new int[segmentStarts[columns * rows]];
+        int[] segmentFill = Arrays.copyOf(segmentStarts, columns * rows);
+        for (int s = 0; s < segments; s++) {
+            int segment = s;
+            forEachCell(s, c -> cellSegments[segmentFill[c]++] = segment);
+        }
+    }
+
+    /**
+     * Builds the index over every intersection and road of graph.
+     */
+    public static SpatialIndex build(Graph<Intersection, Road> graph) {
+        return new SpatialIndex(graph.freeze());
+    }
+
+    public int vertexCount() {
+        return x.length;
+    }
+
+    /**
+     * @return the intersection with dense id v
+     */
+    public Intersection vertex(int v) {
+        return graph.vertexAt(v);
+    }
+
+    public int segmentCount() {
+        return segmentFrom.length;
+    }
+
+    public Intersection segmentFrom(int s) {
+        return graph.vertexAt(segmentFrom[s]);
+    }
+
+    public Intersection segmentTo(int s) {
+        return graph.vertexAt(segmentTo[s]);
+    }
+
+    public Road segmentRoad(int s) {
+        return graph.edgeWeight(segmentEdge[s]);
+    }
+
+    /**
+     * @return the dense id of the intersection segment s starts at
+     */
+    public int segmentSource(int s) {
+        return segmentFrom[s];
+    }
+
+    /**
+     * @return the dense id of the intersection segment s ends at
+     */
+    public int segmentTarget(int s) {
+        return segmentTo[s];
+    }
+
+    /**
+     * @return the edge slot in the frozen graph that segment s was made from, it goes from segmentSource to
+     *         segmentTarget
+     */
+    public int segmentEdge(int s) {
+        return segmentEdge[s];
+    }
+
+    /**
+     * @param radius how far to look, in metres
+     * @return the id of the intersection closest to (lon, lat) no further than radius away, or -1 if there's none
+     */
+    public int nearestVertex(double lon, double lat, double radius) {
+        double px = toX(lon);
+        double py = toY(lat);
+        int best = -1;
+        double bestDistance = radius * radius;
+
+        int column = clamp((int) Math.floor((px - minX) / cellSize), columns);
+        int row = clamp((int) Math.floor((py - minY) / cellSize), rows);
+        int lastRing = maxRing(px, py, column, row, radius);
+        for (int ring = 0; ring <= lastRing; ring++) {
+            for (int c : ringCells(column, row, ring)) {
+                for (int i = vertexStarts[c]; i < vertexStarts[c + 1]; i++) {
+                    int v = cellVertices[i];
+                    double dx = x[v] - px;
+                    double dy = y[v] - py;
+                    double distance = dx * dx + dy * dy;
+                    if (distance <= bestDistance && (best < 0 || distance < bestDistance || v < best)) {
+                        best = v;
+                        bestDistance = distance;
+                    }
+                }
+            }
+            if (best >= 0 && ringReach(px, py, column, row, ring) >= Math.sqrt(bestDistance)) break;
+        }
+        return best;
+    }
+
+    /**
+     * @param radius how far to look, in metres
+     * @return the id of the road segment passing closest to (lon, lat) no further than radius away, or -1 if there's
+     *         none
+     */
+    public int nearestSegment(double lon, double lat, double radius) {
+        double px = toX(lon);
+        double py = toY(lat);
+        int best = -1;
+        double bestDistance = radius * radius;
+
+        int column = clamp((int) Math.floor((px - minX) / cellSize), columns);
+        int row = clamp((int) Math.floor((py - minY) / cellSize), rows);
+        int lastRing = maxRing(px, py, column, row, radius);
+        for (int ring = 0; ring <= lastRing; ring++) {
+            for (int c : ringCells(column, row, ring)) {
+                for (int i = segmentStarts[c]; i < segmentStarts[c + 1]; i++) {
+                    int s = cellSegments[i];
+                    double distance = segmentDistanceSquared(s, px, py);
+                    if (distance <= bestDistance && (best < 0 || distance < bestDistance || s < best)) {
+                        best = s;
+                        bestDistance = distance;
+                    }
+                }
+            }
+            if (best >= 0 && ringReach(px, py, column, row, ring) >= Math.sqrt(bestDistance)) break;
+        }
+        return best;
+    }
+
+    /**
+     * @return how far along segment s, from 0 at its start to 1 at its end, the point on it closest to (lon, lat) is
+     */
+    public double segmentFraction(int s, double lon, double lat) {
+        return fraction(s, toX(lon), toY(lat));
+    }
+
+    /**
+     * @return the distance in metres from (lon, lat) to the closest point of segment s
+     */
+    public double segmentDistance(int s, double lon, double lat) {
+        return Math.sqrt(segmentDistanceSquared(s, toX(lon), toY(lat)));
+    }
+
+    /**
+     * Calls vertices with the id of every intersection inside the box, in no particular order.
+     */
+    public void rangeQuery(double minLon, double minLat, double maxLon, double maxLat, IntConsumer vertices) {
+        double x0 = toX(minLon), x1 = toX(maxLon);
+        double y0 = toY(minLat), y1 = toY(maxLat);
+        int firstColumn = clamp((int) Math.floor((x0 - minX) / cellSize), columns);
+        int lastColumn = clamp((int) Math.floor((x1 - minX) / cellSize), columns);
+        int firstRow = clamp((int) Math.floor((y0 - minY) / cellSize), rows);
+        int lastRow = clamp((int) Math.floor((y1 - minY) / cellSize), rows);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int c = row * columns + column;
+                for (int i = vertexStarts[c]; i < vertexStarts[c + 1]; i++) {
+                    int v = cellVertices[i];
+                    if (x[v] >= x0 && x[v] <= x1 && y[v] >= y0 && y[v] <= y1) {
+                        vertices.accept(v);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Calls segments once with the id of every road segment that passes through a grid cell overlapping the box,
+     * which is every segment crossing the box plus possibly a few that only come close.
+     */
+    public void segmentRangeQuery(double minLon, double minLat, double maxLon, double maxLat, IntConsumer segments) {
+        int firstColumn = clamp((int) Math.floor((toX(minLon) - minX) / cellSize), columns);
+        int lastColumn = clamp((int) Math.floor((toX(maxLon) - minX) / cellSize), columns);
+        int firstRow = clamp((int) Math.floor((toY(minLat) - minY) / cellSize), rows);
+        int lastRow = clamp((int) Math.floor((toY(maxLat) - minY) / cellSize), rows);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int c = row * columns + column;
+                for (int i = segmentStarts[c]; i < segmentStarts[c + 1]; i++) {
+                    int s = cellSegments[i];
+                    // A segment is in several cells, it's only reported from the first one of them in the box
+                    if (firstCellInBox(s, firstColumn, lastColumn, firstRow, lastRow) == c) {
+                        segments.accept(s);
+                    }
+                }
+            }
+        }
+    }
+
+    private double toX(double lon) {
+        return (lon - originLon) * metresPerDegreeLon;
+    }
+
+    private double toY(double lat) {
+        return (lat - originLat) * METRES_PER_DEGREE;
+    }
+
+    private static int clamp(int index, int count) {
+        return Math.max(0, Math.min(count - 1, index));
+    }
+
+    private int cellOf(double px, double py) {
+        return clamp((int) ((py - minY) / cellSize), rows) * columns + clamp((int) ((px - minX) / cellSize), columns);
+    }
+
+    /**
+     * The cells segment s passes through, in row major order.
+     */
+    private void forEachCell(int s, IntConsumer cells) {
+        for (int row = firstRow(s); row <= lastRow(s); row++) {
+            long range = columnRange(s, row);
+            for (int column = (int) (range >>> 32); column <= (int) range; column++) {
+                cells.accept(row * columns + column);
+            }
+        }
+    }
+
+    private int firstRow(int s) {
+        return clamp((int) ((Math.min(y[segmentFrom[s]], y[segmentTo[s]]) - minY) / cellSize), rows);
+    }
+
+    private int lastRow(int s) {
+        return clamp((int) ((Math.max(y[segmentFrom[s]], y[segmentTo[s]]) - minY) / cellSize), rows);
+    }
+
+    /**
+     * @return the first and last column segment s passes through in a row it crosses, worked out from where it
+     *         enters and leaves the row, packed as first << 32 | last
+     */
+    private long columnRange(int s, int row) {
+        double x0 = x[segmentFrom[s]], y0 = y[segmentFrom[s]];
+        double x1 = x[segmentTo[s]], y1 = y[segmentTo[s]];
+        double low = Math.max(Math.min(y0, y1), minY + row * cellSize);
+        double high = Math.min(Math.max(y0, y1), minY + (row + 1) * cellSize);
+        if (row == firstRow(s)) low = Math.min(y0, y1);
+        if (row == lastRow(s)) high = Math.max(y0, y1);
+        double xLow = y1 == y0 ? x0 : x0 + (x1 - x0) * (low - y0) / (y1 - y0);
+        double xHigh = y1 == y0 ? x1 : x0 + (x1 - x0) * (high - y0) / (y1 - y0);
+        long first = clamp((int) ((Math.min(xLow, xHigh) - minX) / cellSize), columns);
+        long last = clamp((int) ((Math.max(xLow, xHigh) - minX) / cellSize), columns);
+        return first << 32 | last;
+    }
+
+    /**
+     * @return the first cell (row major) segment s passes through inside the box of cells, or -1 if there's none
+     */
+    private int firstCellInBox(int s, int firstColumn, int lastColumn, int firstRow, int lastRow) {
+        for (int row = Math.max(firstRow, firstRow(s)); row <= Math.min(lastRow, lastRow(s)); row++) {
+            long range = columnRange(s, row);
+            int first = Math.max(firstColumn, (int) (range >>> 32));
+            if (first <= Math.min(lastColumn, (int) range)) return row * columns + first;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the cells of the square ring this many cells out from (column, row), clipped to the grid
+     */
+    private int[] ringCells(int column, int row, int ring) {
+        if (ring == 0) return new int[]{row * columns + column};
+        int[] cells = new int[8 * ring];
+        int count = 0;
+        for (int r = row - ring; r <= row + ring; r++) {
+            if (r < 0 || r >= rows) continue;
+            boolean edgeRow = r == row - ring || r == row + ring;
+            for (int c = column - ring; c <= column + ring; c += edgeRow ? 1 : 2 * ring) {
+                if (c >= 0 && c < columns) cells[count++] = r * columns + c;
+            }
+        }
+        return Arrays.copyOf(cells, count);
+    }
+
+    /**
+     * @return how far from (px, py) everything outside rings 0 to ring is guaranteed to be
+     */
+    private double ringReach(double px, double py, int column, int row, int ring) {
+        double left = px - (minX + (column - ring) * cellSize);
+        double right = minX + (column + ring + 1) * cellSize - px;
+        double bottom = py - (minY + (row - ring) * cellSize);
+        double top = minY + (row + ring + 1) * cellSize - py;
+        return Math.min(Math.min(left, right), Math.min(bottom, top));
+    }
+
+    /**
+     * @return the last ring worth looking at: the first one reaching past radius, or the one covering the whole grid
+     */
+    private int maxRing(double px, double py, int column, int row, double radius) {
+        int wholeGrid = Math.max(Math.max(column, columns - 1 - column), Math.max(row, rows - 1 - row));
+        if (radius >= Double.MAX_VALUE) return wholeGrid;
+        int ring = 0;
+        while (ring < wholeGrid && ringReach(px, py, column, row, ring) < radius) ring++;
+        return ring;
+    }
+
+    private double fraction(int s, double px, double py) {
+        double x0 = x[segmentFrom[s]], y0 = y[segmentFrom[s]];
+        double dx = x[segmentTo[s]] - x0, dy = y[segmentTo[s]] - y0;
+        double lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared == 0) return 0;
+        return Math.max(0, Math.min(1, ((px - x0) * dx + (py - y0) * dy) / lengthSquared));
+    }
+
+    private double segmentDistanceSquared(int s, double px, double py) {
+        double t = fraction(s, px, py);
+        double x0 = x[segmentFrom[s]], y0 = y[segmentFrom[s]];
+        double cx = x0 + (x[segmentTo[s]] - x0) * t - px;
+        double cy = y0 + (y[segmentTo[s]] - y0) * t - py;
+        return cx * cx + cy * cy;
+    }
+}
@@ -1,66 +1,465 @@
 package abruzese.util;
 
-import abruzese.graph.ALGraph;
+import abruzese.graph.CSRGraph;
+import abruzese.graph.ContractionHierarchy;
 import abruzese.graph.Graph;
+import abruzese.graph.LandmarkHeuristic;
+import abruzese.graph.SearchContext;
 import abruzese.graph.edges.Road;
 import abruzese.graph.vertices.Intersection;
 import abruzese.hashtable.HashTable;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 
 /**
  * Stores a streetmap graph and allows for pathfinding
  */
 public class StreetMap {
-    private final Graph<Intersection, Road> streetGraph;
+    private final CSRGraph<Intersection, Road> streetGraph;
+    private final MapImage image; // null unless the map was opened from an image
+    private volatile RoutingStrategy routingStrategy = RoutingStrategy.AUTO;
+    private volatile ContractionHierarchy<Intersection, Road> contractionHierarchy;
+    private volatile LandmarkHeuristic<Intersection> landmarks;
+    private final HashTable<String, Intersection> intersectionsByID; // null for images, they have their own table
+    private volatile HashTable<String, int[]> roadsByID;
+    private volatile HashTable<Intersection, double[]> coordinates;
+    private volatile SpatialIndex spatialIndex;
+
+    // "latitude,longitude", the form coordinates are typed in wherever an intersection ID could go
+    private static final Pattern COORDINATES =
+            Pattern.compile("\\s*(-?\\d+(?:\\.\\d*)?)\\s*,\\s*(-?\\d+(?:\\.\\d*)?)\\s*");
 
     public Graph<Intersection, Road> getStreetGraph() {
         return streetGraph;
     }
 
+    public RoutingStrategy getRoutingStrategy() {
+        return routingStrategy;
+    }
+
+    public void setRoutingStrategy(RoutingStrategy routingStrategy) {
+        this.routingStrategy = routingStrategy;
+    }
+
+    /**
+     * Builds the contraction hierarchy the first time it's requested. Building takes a while on large maps.
+     */
+    public ContractionHierarchy<Intersection, Road> getContractionHierarchy() {
+        ContractionHierarchy<Intersection, Road> hierarchy = contractionHierarchy;
+        if (hierarchy == null) {
+            synchronized (this) {
+                hierarchy = contractionHierarchy;
+                if (hierarchy == null) {
+                    hierarchy = ContractionHierarchy.build(streetGraph.freeze());
+                    contractionHierarchy = hierarchy;
+                }
+            }
+        }
+        return hierarchy;
+    }
+
+    /**
+     * Picks and precomputes the A* landmarks the first time they're requested.
+     */
+    public LandmarkHeuristic<Intersection> getLandmarks() {
+        LandmarkHeuristic<Intersection> heuristic = landmarks;
+        if (heuristic == null) {
+            synchronized (this) {
+                heuristic = landmarks;
+                if (heuristic == null) {
+                    heuristic = LandmarkHeuristic.build(streetGraph.freeze());
+                    landmarks = heuristic;
+                }
+            }
+        }
+        return heuristic;
+    }
+
+    /**
+     * Builds the spatial index the first time it's requested. It's what points are snapped to roads with, and what
+     * the map panel draws and hit-tests with.
+     */
+    public SpatialIndex getSpatialIndex() {
+        SpatialIndex index = spatialIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = spatialIndex;
+                if (index == null) {
+                    index = SpatialIndex.build(streetGraph);
+                    spatialIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    // Matrices with at least this many entries are worth building the contraction hierarchy for
+    private static final long HIERARCHY_MATRIX_SIZE = 250_000;
+
+    /**
+     * Loads a map from either the text format or a {@link MapImage}, whichever the file turns out to be.
+     */
     public StreetMap(String filename) throws IOException {
-        this.streetGraph = MapBuilder.buildFromFile(filename);
+        if (MapImage.isImage(filename)) {
+            this.image = MapImage.open(filename);
+            this.streetGraph = image.toGraph();
+            this.intersectionsByID = null;
+        } else {
+            // Maps never change after loading so freeze them for faster pathfinding
+            MapBuilder.LoadedMap loaded = MapBuilder.load(filename);
+            this.image = null;
+            this.streetGraph = loaded.graph().freeze();
+            // The loader's ID table stays valid since the graph can't change from here on
+            this.intersectionsByID = loaded.intersectionsByID();
+        }
+    }
+
+    /**
+     * Saves this map as a {@link MapImage} that later runs can open almost instantly.
+     */
+    public void saveImage(String filename) throws IOException {
+        MapImage.write(streetGraph, filename);
+    }
+
+    /**
+     * Looks up an intersection by its ID in the table kept from loading (or the image's own table).
+     *
+     * @return the intersection, or null if there's none with that ID
+     */
+    public Intersection getIntersection(String intersectionID) {
+        if (image != null) {
+            int v = image.indexOf(intersectionID);
+            return v < 0 ? null : streetGraph.vertexAt(v);
+        }
+        return intersectionsByID.get(intersectionID);
+    }
+
+    /**
+     * Looks up the roads with an ID, the table is built on the first lookup. A road is normally one ID between two
+     * intersections, but nothing stops a map from reusing an ID so every match is returned.
+     *
+     * @return the two intersections each road with that ID connects, empty if there's none
+     */
+    public List<HashTable.Entry<Intersection, Intersection>> getRoad(String roadID) {
+        int[] edges = getRoadsByID().get(roadID);
+        if (edges == null) return List.of();
+
+        List<HashTable.Entry<Intersection, Intersection>> roads = new ArrayList<>(edges.length / 2);
+        for (int i = 0; i < edges.length; i += 2) {
+            roads.add(new HashTable.Entry<>(streetGraph.vertexAt(edges[i]), streetGraph.vertexAt(edges[i + 1])));
+        }
+        return roads;
+    }
+
+    /**
+     * @return a table from road ID to the [from, to] vertex ids of each road with it, one direction per road
+     */
+    private HashTable<String, int[]> getRoadsByID() {
+        HashTable<String, int[]> index = roadsByID;
+        if (index == null) {
+            synchronized (this) {
+                index = roadsByID;
+                if (index == null) {
+                    index = new HashTable<>((int) (streetGraph.edgeCount() / 2 / 0.75f) + 1);
+                    for (int u = 0; u < streetGraph.vertexCount(); u++) {
+                        for (int e = streetGraph.outStart(u); e < streetGraph.outEnd(u); e++) {
+                            int v = streetGraph.target(e);
+                            // Two-way roads are stored once, from the end with the higher id
+                            if (u < v && streetGraph.edgeIndex(v, u) >= 0) continue;
+                            // Images can hand out a road's ID without making the Road
+                            String roadID = image != null ? image.roadID(e) : streetGraph.edgeWeight(e).roadID;
+                            int[] ends = index.get(roadID);
+                            if (ends == null) {
+                                ends = new int[]{u, v};
+                            } else {
+                                ends = Arrays.copyOf(ends, ends.length + 2);
+                                ends[ends.length - 2] = u;
+                                ends[ends.length - 1] = v;
+                            }
+                            index.put(roadID, ends);
+                        }
+                    }
+                    roadsByID = index;
+                }
+            }
+        }
+        return index;
     }
 
     /**
      * Returns the shortest path between two intersections given as strings
      */
     public List<Intersection> findPath(String start, String end) {
-        Intersection startIntersection = null;
-        Intersection endIntersection = null;
-
         // Find the intersections matching the given IDs
-        for (Intersection intersection : streetGraph) {
-            if (intersection.intersectionID().equals(start)) {
-                startIntersection = intersection;
+        Intersection startIntersection = getIntersection(start);
+        Intersection endIntersection = getIntersection(end);
+
+        if (startIntersection == null || endIntersection == null) {
+            throw new IllegalArgumentException("Start or end intersection not found");
+        }
+
+        if (routingStrategy == RoutingStrategy.AUTO && isLongRoute(startIntersection, endIntersection)) {
+            System.out.println("Switching to A* for directions greater than 200km: " + (int)(Helpers.estimateDistance(startIntersection, endIntersection)/1000) + "km");
+        }
+        return findPath(startIntersection, endIntersection);
+    }
+
+    /**
+     * Returns the shortest path between two intersections using the current routing strategy without printing
+     * anything, so it can be called from several threads at once.
+     */
+    public List<Intersection> findPath(Intersection startIntersection, Intersection endIntersection) {
+        return switch (routingStrategy) {
+            case DIJKSTRA -> streetGraph.path(startIntersection, endIntersection);
+            case DIAL -> streetGraph.pathDial(startIntersection, endIntersection);
+            case A_STAR -> streetGraph.pathAStar(startIntersection, endIntersection, getCoordinates());
+            case A_STAR_LANDMARKS -> streetGraph.pathAStar(startIntersection, endIntersection, getLandmarks());
+            case CONTRACTION_HIERARCHIES -> getContractionHierarchy().path(startIntersection, endIntersection);
+            case AUTO -> findPathAuto(startIntersection, endIntersection);
+        };
+    }
+
+    /**
+     * Returns the shortest route between two points given as coordinates. Each point is snapped to the closest spot
+     * on the closest road, and the route starts and ends there, partway along those roads, instead of at whichever
+     * intersection happens to be nearest. Snapped routes are always found with Dijkstra's algorithm since the
+     * search starts from both ends of the first road at once.
+     *
+     * @return the route, empty if the two roads aren't connected
+     */
+    public Route findPath(double lat1, double lon1, double lat2, double lon2) {
+        return route(snap(lat1, lon1, true), snap(lat2, lon2, false));
+    }
+
+    /**
+     * Returns the shortest route between two places, each given as either an intersection ID or as coordinates
+     * ("latitude,longitude"). Two intersections are routed with the current routing strategy the same as
+     * {@link #findPath(String, String)}, coordinates are snapped to the closest road like
+     * {@link #findPath(double, double, double, double)}.
+     *
+     * @return the route, empty if there's none
+     */
+    public Route findRoute(String start, String end) {
+        double[] startCoordinates = parseCoordinates(start);
+        double[] endCoordinates = parseCoordinates(end);
+        if (startCoordinates == null && endCoordinates == null) {
+            List<Intersection> path = findPath(start, end);
+            List<Road> roads = new ArrayList<>(Math.max(0, path.size() - 1));
+            for (int i = 0; i + 1 < path.size(); i++) {
+                roads.add(streetGraph.get(path.get(i), path.get(i + 1)));
             }
-            if (intersection.intersectionID().equals(end)) {
-                endIntersection = intersection;
+            return new Route(path, roads);
+        }
+
+        Endpoint from = startCoordinates != null ? snap(startCoordinates[0], startCoordinates[1], true)
+                : atIntersection(start);
+        Endpoint to = endCoordinates != null ? snap(endCoordinates[0], endCoordinates[1], false)
+                : atIntersection(end);
+        return route(from, to);
+    }
+
+    /**
+     * @return the [latitude, longitude] in text like "43.1306,-77.6261", or null if it isn't coordinates
+     * @throws IllegalArgumentException if it's coordinates that aren't anywhere on Earth
+     */
+    public static double[] parseCoordinates(String text) {
+        Matcher matcher = COORDINATES.matcher(text);
+        if (!matcher.matches()) return null;
+        double latitude = Double.parseDouble(matcher.group(1));
+        double longitude = Double.parseDouble(matcher.group(2));
+        if (Math.abs(latitude) > 90 || Math.abs(longitude) > 180) {
+            throw new IllegalArgumentException("Coordinates out of range: " + text.trim());
+        }
+        return new double[]{latitude, longitude};
+    }
+
+    /**
+     * One end of a snapped route: the point itself, and the intersections the search can start (or finish) at with
+     * how far along the road each is and the piece of road that covers. A point right on an intersection is just that
+     * intersection at distance 0 with no road. segment is the spatial index segment the point is on and fraction how
+     * far along it, or -1 for an intersection.
+     */
+    private record Endpoint(Intersection point, int[] vertices, double[] distances, Road[] roads, int segment,
+                            double fraction) {
+    }
+
+    private Endpoint atIntersection(String intersectionID) {
+        Intersection intersection = getIntersection(intersectionID);
+        if (intersection == null) {
+            throw new IllegalArgumentException("Intersection not found: " + intersectionID);
+        }
+        return atVertex(streetGraph.indexOf(intersection));
+    }
+
+    private Endpoint atVertex(int v) {
+        return new Endpoint(streetGraph.vertexAt(v), new int[]{v}, new double[]{0}, new Road[]{null}, -1, 0);
+    }
+
+    /**
+     * Snaps a point to the closest spot on the closest road. Leaving the point can go either way along the road, to
+     * the road's end along its forward edge or back to its start along the reverse edge if there is one. Arriving is
+     * the same the other way round.
+     *
+     * @param leaving true if this is where the route starts, false if it's where it ends
+     */
+    private Endpoint snap(double latitude, double longitude, boolean leaving) {
+        SpatialIndex index = getSpatialIndex();
+        int s = index.nearestSegment(longitude, latitude, Double.POSITIVE_INFINITY);
+        if (s < 0) {
+            // A map without roads, the closest intersection is as close as it gets
+            int v = index.nearestVertex(longitude, latitude, Double.POSITIVE_INFINITY);
+            if (v < 0) throw new IllegalArgumentException("The map is empty");
+            return atVertex(v);
+        }
+
+        double fraction = index.segmentFraction(s, longitude, latitude);
+        int a = index.segmentSource(s);
+        int b = index.segmentTarget(s);
+        if (fraction <= 0) return atVertex(a);
+        if (fraction >= 1) return atVertex(b);
+
+        Intersection from = index.vertex(a);
+        Intersection to = index.vertex(b);
+        double snappedLatitude = from.latitude() + (to.latitude() - from.latitude()) * fraction;
+        double snappedLongitude = from.longitude() + (to.longitude() - from.longitude()) * fraction;
+        Intersection point = new Intersection(
+                String.format(Locale.ROOT, "%.6f,%.6f", snappedLatitude, snappedLongitude),
+                snappedLongitude, snappedLatitude);
+
+        String roadID = index.segmentRoad(s).roadID;
+        double forward = streetGraph.weight(index.segmentEdge(s));
+        int backwardEdge = streetGraph.edgeIndex(b, a);
+        int ends = backwardEdge < 0 ? 1 : 2;
+        int[] vertices = new int[ends];
+        double[] distances = new double[ends];
+        vertices[0] = leaving ? b : a;
+        distances[0] = forward * (leaving ? 1 - fraction : fraction);
+        if (backwardEdge >= 0) {
+            vertices[1] = leaving ? a : b;
+            distances[1] = streetGraph.weight(backwardEdge) * (leaving ? fraction : 1 - fraction);
+        }
+        Road[] roads = new Road[ends];
+        for (int i = 0; i < ends; i++) {
+            roads[i] = new Road(roadID, distances[i]);
+        }
+        return new Endpoint(point, vertices, distances, roads, s, fraction);
+    }
+
+    /**
+     * Finds the shortest route from start to end, including driving straight from one to the other when they're on
+     * the same road.
+     */
+    private Route route(Endpoint start, Endpoint end) {
+        Route direct = sameRoad(start, end);
+        SearchContext context = streetGraph.acquireContext();
+        try {
+            int best = streetGraph.dijkstra(start.vertices(), start.distances(), end.vertices(), end.distances(),
+                    context);
+            double bestDistance = best < 0 ? Double.POSITIVE_INFINITY
+                    : context.dist(end.vertices()[best]) + end.distances()[best];
+            if (direct != null && direct.distance() <= bestDistance) return direct;
+            if (best < 0) return new Route(List.of(), List.of());
+
+            List<Intersection> vertices = streetGraph.buildPath(end.vertices()[best], context);
+            List<Intersection> path = new ArrayList<>(vertices.size() + 2);
+            List<Road> roads = new ArrayList<>(vertices.size() + 1);
+            if (start.segment() >= 0) {
+                // The search began at whichever end of the road the path starts at
+                int first = streetGraph.indexOf(vertices.getFirst());
+                int i = start.vertices()[0] == first ? 0 : 1;
+                path.add(start.point());
+                roads.add(start.roads()[i]);
+            }
+            for (int i = 0; i < vertices.size(); i++) {
+                if (i > 0) roads.add(streetGraph.get(vertices.get(i - 1), vertices.get(i)));
+                path.add(vertices.get(i));
+            }
+            if (end.segment() >= 0) {
+                roads.add(end.roads()[best]);
+                path.add(end.point());
             }
+            return new Route(path, roads);
+        } finally {
+            streetGraph.releaseContext(context);
         }
+    }
 
-        if (startIntersection == null || endIntersection == null) {
-            throw new IllegalArgumentException("Start or end intersection not found");
+    /**
+     * @return the route straight along the road when start and end were snapped onto the same one and it goes that
+     *         way, otherwise null
+     */
+    private Route sameRoad(Endpoint start, Endpoint end) {
+        if (start.segment() < 0 || start.segment() != end.segment()) return null;
+
+        SpatialIndex index = getSpatialIndex();
+        int s = start.segment();
+        int edge = start.fraction() <= end.fraction() ? index.segmentEdge(s)
+                : streetGraph.edgeIndex(index.segmentTarget(s), index.segmentSource(s));
+        if (edge < 0) return null;
+        double distance = streetGraph.weight(edge) * Math.abs(end.fraction() - start.fraction());
+        return new Route(List.of(start.point(), end.point()),
+                List.of(new Road(index.segmentRoad(s).roadID, distance)));
+    }
+
+    /**
+     * Finds the road distance from every source to every target, matrix[i][j] is the distance from sources[i] to
+     * targets[j] or Double.POSITIVE_INFINITY if there's no route. Large matrices (or any matrix once the
+     * contraction hierarchy has been built or picked as the routing strategy) go through the hierarchy's bucket
+     * algorithm, smaller ones run one search per source.
+     */
+    public double[][] distanceMatrix(List<Intersection> sources, List<Intersection> targets) {
+        boolean useHierarchy = routingStrategy == RoutingStrategy.CONTRACTION_HIERARCHIES
+                || contractionHierarchy != null
+                || (long) sources.size() * targets.size() >= HIERARCHY_MATRIX_SIZE;
+        if (useHierarchy) {
+            return getContractionHierarchy().distanceMatrix(sources, targets);
         }
+        return streetGraph.distanceMatrix(sources, targets);
+    }
 
+    private List<Intersection> findPathAuto(Intersection startIntersection, Intersection endIntersection) {
         //This is optional, but doing dijkstra's on paths over 200km can have noticeable delay and I wanted to try my hand at A*
-        if(Helpers.estimateDistance(startIntersection, endIntersection) > 200000) {
-            System.out.println("Switching to A* for directions greater than 200km: " + (int)(Helpers.estimateDistance(startIntersection, endIntersection)/1000) + "km");
+        if(isLongRoute(startIntersection, endIntersection)) {
 //            System.out.print("Print searching statistics while finding path (it could take awhile) (y/n)\n> ");
 //            String input = new java.util.Scanner(System.in).nextLine();
 //            if(input.equalsIgnoreCase("y")) {
 //                return Helpers.aStar(streetGraph, startIntersection, endIntersection);
 //            }
-            HashTable<Intersection, double[]> coordTable = new HashTable<>();
-            for (Intersection intersection : streetGraph) {
-                coordTable.put(intersection, new double[]{intersection.latitude(), intersection.longitude()});
-            }
-
-            return ((ALGraph<Intersection, Road>)streetGraph).pathAStar(startIntersection, endIntersection, coordTable);
+            return streetGraph.pathAStar(startIntersection, endIntersection, getCoordinates());
         }
 
         return streetGraph.path(startIntersection, endIntersection);
     }
-}
\ No newline at end of file
+
+    private static boolean isLongRoute(Intersection startIntersection, Intersection endIntersection) {
+        return Helpers.estimateDistance(startIntersection, endIntersection) > 200000;
+    }
+
+    /**
+     * @return a map from each intersection to its [latitude, longitude], the form pathAStar takes coordinates in.
+     *         Built once and shared since the map never changes
+     */
+    private HashTable<Intersection, double[]> getCoordinates() {
+        HashTable<Intersection, double[]> coordTable = coordinates;
+        if (coordTable == null) {
+            synchronized (this) {
+                coordTable = coordinates;
+                if (coordTable == null) {
+                    coordTable = new HashTable<>();
+                    for (Intersection intersection : streetGraph) {
+                        coordTable.put(intersection, new double[]{intersection.latitude(), intersection.longitude()});
+                    }
+                    coordinates = coordTable;
+                }
+            }
+        }
+        return coordTable;
+    }
+}